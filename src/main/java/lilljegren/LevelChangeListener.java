@@ -0,0 +1,19 @@
+package lilljegren;
+
+import java.math.BigDecimal;
+
+/**
+ * <pre>
+ * Callback for changes to the aggregated size of a price level
+ *
+ * The delta is the change in aggregated quantity and newSize the size of the level after the change,
+ * a newSize of 0 means the level was removed from the book
+ *
+ * Listeners are invoked on the thread mutating the book so they should be quick
+ * </pre>
+ */
+@FunctionalInterface
+public interface LevelChangeListener {
+
+    void onLevelChange(Level2View.Side side, BigDecimal price, long delta, long newSize);
+}
@@ -0,0 +1,44 @@
+package lilljegren;
+
+import java.math.BigDecimal;
+
+/**
+ * <pre>
+ * How much checking a book does of the events it receives
+ *
+ * The policy is fixed when the book is created, so each check is a branch on a final field that is always predicted correctly
+ * </pre>
+ */
+public enum Validation {
+    /**
+     * Arguments and order ids are checked and an IllegalArgumentException thrown, the book is left unchanged on error
+     */
+    STRICT,
+    /**
+     * Checks are only done with assert statements, i.e. they are free unless the JVM runs with -ea
+     */
+    ASSERT,
+    /**
+     * No checks and no extra lookups, for feeds that are already known to be consistent e.g. sequence checked by the venue.
+     * A bad event gives undefined behaviour, typically a NullPointerException or a corrupt book
+     */
+    TRUSTED;
+
+    /**
+     * @param price price of an order
+     * @param quantity quantity of an order
+     * @return null if the price and quantity are valid for an order otherwise a description of the problem
+     */
+    public static String describeInvalidOrder(BigDecimal price, long quantity) {
+        if (price == null) {
+            return "Price can't be null";
+        }
+        if (price.signum() < 0) {
+            return "Price must be greater or equal to 0, was:" + price;
+        }
+        if (quantity <= 0) {
+            return "Quantity must be greater than 0, was:" + quantity;
+        }
+        return null;
+    }
+}
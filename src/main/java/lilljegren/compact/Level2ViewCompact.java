@@ -1,19 +1,22 @@
 package lilljegren.compact;
 
 import lilljegren.Level2View;
+import lilljegren.Validation;
 
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeSet;
 
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toCollection;
 
 /**
  * <pre>
  * Simple implementation using a single Map, inserts and cancels are O(1) while queries are O(N)
  *
- * Edge cases are just marked with assertions in this version
+ * Edge cases are by default just marked with assertions in this version, see Validation for the other policies
  *
  * This implementation also serves to test the scalable implementation
  * </pre>
@@ -22,25 +25,66 @@ public class Level2ViewCompact implements Level2View {
     //We assume single threaded otherwise use ConcurrentMap
     private final Map<Long, Order> id2Orders = new HashMap<>();
 
+    private final Validation validation;
+    //The validation policy as final flags, so the checks are just a predictable branch
+    private final boolean strict;
+    private final boolean asserting;
+
+    public Level2ViewCompact() {
+        this(Validation.ASSERT);
+    }
+
+    public Level2ViewCompact(Validation validation) {
+        this.validation = requireNonNull(validation);
+        this.strict = validation == Validation.STRICT;
+        this.asserting = validation == Validation.ASSERT;
+    }
+
+    public Validation getValidation() {
+        return validation;
+    }
+
     @Override
     public void onNewOrder(Side side, BigDecimal price, long quantity, long orderId) {
+        checkOrder(side, price, quantity);
         var newOrder = new Order(side,price,quantity,orderId);
-        var prev = id2Orders.put(orderId,newOrder);
-        assert prev == null : "Order with id "+orderId+" already existed";
+        if (strict) {
+            if (id2Orders.putIfAbsent(orderId, newOrder) != null) {
+                throw new IllegalArgumentException(format("An order with id:[%d] already exist", orderId));
+            }
+        } else {
+            //putIfAbsent so a duplicate caught by the assert doesn't replace the mapped order
+            var prev = id2Orders.putIfAbsent(orderId, newOrder);
+            assert !asserting || prev == null : "Order with id " + orderId + " already existed";
+        }
+    }
+
+    /**
+     * Remove all orders e.g. before loading a snapshot
+     */
+    public void clear() {
+        id2Orders.clear();
     }
 
     @Override
     public void onCancelOrder(long orderId) {
         //Just remove
         var prev = id2Orders.remove(orderId);
-        assert prev != null : "Order with id "+orderId+" doesn't exist";
+        if (strict && prev == null) {
+            throw createOrderMissingException(orderId);
+        }
+        assert !asserting || prev != null : "Order with id "+orderId+" doesn't exist";
     }
 
     @Override
     public void onReplaceOrder(BigDecimal price, long quantity, long orderId) {
         //Check that we didn't already have it
         var prevVersion = id2Orders.get(orderId);
-        assert prevVersion != null : "No order with id "+orderId+" exist. Can't replace";
+        if (strict && prevVersion == null) {
+            throw createOrderMissingException(orderId);
+        }
+        assert !asserting || prevVersion != null : "No order with id "+orderId+" exist. Can't replace";
+        checkOrder(prevVersion.getSide(), price, quantity);
         //Replace with new version
         id2Orders.put(orderId,prevVersion.with(price,quantity));
     }
@@ -48,10 +92,16 @@ public class Level2ViewCompact implements Level2View {
     @Override
     public void onTrade(long quantity, long restingOrderId) {
         var prevVersion = id2Orders.get(restingOrderId);
-        assert prevVersion != null : "No order with id "+restingOrderId+" exist. Can't trade";
+        if (strict && prevVersion == null) {
+            throw createOrderMissingException(restingOrderId);
+        }
+        assert !asserting || prevVersion != null : "No order with id "+restingOrderId+" exist. Can't trade";
 
         var remaining = prevVersion.getQuantity()-quantity;
-        assert remaining >=0 : "Can't trade more than quantity:"+quantity+">"+prevVersion.getQuantity();
+        if (strict && (quantity < 0 || remaining < 0)) {
+            throw new IllegalArgumentException(format("Can't trade quantity:[%d] of order with quantity:[%d]", quantity, prevVersion.getQuantity()));
+        }
+        assert !asserting || remaining >=0 : "Can't trade more than quantity:"+quantity+">"+prevVersion.getQuantity();
         if (remaining > 0) {
             onReplaceOrder(prevVersion.getPrice(), remaining, restingOrderId);//Re-use
         } else {//Can discuss the < 0 case
@@ -60,6 +110,22 @@ public class Level2ViewCompact implements Level2View {
 
     }
 
+    private void checkOrder(Side side, BigDecimal price, long quantity) {
+        if (strict) {
+            requireNonNull(side);
+            var error = Validation.describeInvalidOrder(price, quantity);
+            if (error != null) {
+                throw new IllegalArgumentException(error);
+            }
+        }
+        assert !asserting || side != null : "Side can't be null";
+        assert !asserting || Validation.describeInvalidOrder(price, quantity) == null : Validation.describeInvalidOrder(price, quantity);
+    }
+
+    private IllegalArgumentException createOrderMissingException(long orderId) {
+        return new IllegalArgumentException(format("No order with id:[%d] exist", orderId));
+    }
+
     @Override
     public long getSizeForPriceLevel(Side side, BigDecimal price) {
         return id2Orders.values().stream()
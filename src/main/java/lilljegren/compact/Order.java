@@ -19,14 +19,11 @@ final class Order {
     private final long quantity;
 
     Order(Level2View.Side side, BigDecimal price, long quantity, long orderId) {
-
-        this.side = requireNonNull(side);
-        this.price = requireNonNull(price);
+        //Arguments are checked by the book according to its Validation policy
+        this.side = side;
+        this.price = price;
         this.quantity = quantity;
         this.orderId = orderId;
-
-        assert price.compareTo(BigDecimal.ZERO) >= 0 :"Price must be greater or equal to 0, was:"+price;
-        assert quantity > 0:"Quantity must be greater than 0, was:"+quantity;
     }
 
 
@@ -0,0 +1,110 @@
+package lilljegren.consolidated;
+
+import lilljegren.Level2View;
+import lilljegren.scalable.Level2ViewScalable;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.TreeMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <pre>
+ * Consolidated view (NBBO) over the books of several venues trading the same instrument
+ *
+ * The view listens to level changes of the venue books and keeps the aggregated size per price level for all venues,
+ * so queries cost the same regardless of the number of venues, i.e. O(LogL) where L is the number of consolidated levels
+ *
+ * The view is read only, events must be sent to the venue books. As the venue books it is not thread safe,
+ * all venue books must be updated on the same thread as the one querying this view
+ * </pre>
+ */
+public class Level2ViewConsolidated implements Level2View {
+
+    private final EnumMap<Side, TreeMap<BigDecimal, Level>> sides;
+
+    public Level2ViewConsolidated(Level2ViewScalable... venues){
+        sides = new EnumMap<>(Side.class);
+        for (var s : Side.values()) {
+            Comparator<BigDecimal> c = Comparator.naturalOrder();//lowest ask is best
+            if (s == Side.BID) {
+                c = c.reversed();
+            }
+            sides.put(s, new TreeMap<>(c));
+        }
+        for (var venue : venues) {
+            addVenue(venue);
+        }
+    }
+
+    /**
+     * Add a venue, any orders already in the venue book are included in the consolidated view
+     * @param venue the book of the venue
+     */
+    public void addVenue(Level2ViewScalable venue){
+        requireNonNull(venue).addLevelChangeListener(this::onVenueLevelChange);
+    }
+
+    private void onVenueLevelChange(Side side, BigDecimal price, long delta, long newSize){
+        var levels = sides.get(side);
+        var level = levels.computeIfAbsent(price, p -> new Level());
+        level.size += delta;
+        assert level.size >= 0 : "Consolidated size can't be negative, was:" + level.size;
+        if (level.size == 0) {
+            levels.remove(price);
+        }
+    }
+
+    @Override
+    public void onNewOrder(Side side, BigDecimal price, long quantity, long orderId) {
+        throw createReadOnlyException();
+    }
+
+    @Override
+    public void onCancelOrder(long orderId) {
+        throw createReadOnlyException();
+    }
+
+    @Override
+    public void onReplaceOrder(BigDecimal price, long quantity, long orderId) {
+        throw createReadOnlyException();
+    }
+
+    @Override
+    public void onTrade(long quantity, long restingOrderId) {
+        throw createReadOnlyException();
+    }
+
+    @Override
+    public long getSizeForPriceLevel(Side side, BigDecimal price) {
+        var level = sides.get(requireNonNull(side)).get(requireNonNull(price));
+        return level == null ? 0 : level.size;
+    }
+
+    @Override
+    public long getBookDepth(Side side) {
+        return sides.get(requireNonNull(side)).size();
+    }
+
+    @Override
+    public BigDecimal getTopOfBook(Side side) {
+        var levels = sides.get(requireNonNull(side));
+        if (levels.isEmpty()) {
+            return null;
+        }
+        return levels.firstKey();
+    }
+
+    private UnsupportedOperationException createReadOnlyException() {
+        return new UnsupportedOperationException("The consolidated view is read only, send the event to the venue book");
+    }
+
+    /**
+     * Aggregated quantity for a price level over all venues
+     */
+    private static final class Level {
+        long size;
+    }
+}
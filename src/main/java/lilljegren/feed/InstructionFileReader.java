@@ -0,0 +1,102 @@
+package lilljegren.feed;
+
+import lilljegren.Level2View;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <pre>
+ * Streams a capture file with one instruction per line through an InstructionParser
+ *
+ * The file is read in chunks into one reusable buffer and each line is parsed in place, so the size of the file doesn't matter
+ * and no objects are created per line. Empty lines are skipped and both \n and \r\n line endings are accepted
+ *
+ * A line longer than the buffer grows the buffer, errors are reported with the line number
+ * </pre>
+ */
+public final class InstructionFileReader {
+
+    private final InstructionParser parser;
+    private byte[] buffer;
+
+    public InstructionFileReader(InstructionParser parser, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(format("bufferSize must be greater than 0 was:[%d]", bufferSize));
+        }
+        this.parser = requireNonNull(parser);
+        this.buffer = new byte[bufferSize];
+    }
+
+    public InstructionFileReader(InstructionParser parser) {
+        this(parser, 1 << 16);
+    }
+
+    /**
+     * @return number of instructions applied to the target
+     */
+    public long read(Path file, Level2View target) throws IOException {
+        try (var in = Files.newInputStream(file)) {
+            return read(in, target);
+        }
+    }
+
+    /**
+     * Read until the end of the stream, the stream is not closed
+     * @return number of instructions applied to the target
+     */
+    public long read(InputStream in, Level2View target) throws IOException {
+        long instructions = 0;
+        long lineNumber = 0;
+        int filled = 0;
+        boolean eof = false;
+        while (!eof) {
+            var read = in.read(buffer, filled, buffer.length - filled);
+            if (read < 0) {
+                eof = true;
+                //Terminate the last line if the file doesn't end with a line break
+                if (filled == buffer.length) {
+                    grow();
+                }
+                buffer[filled++] = '\n';
+            } else {
+                filled += read;
+            }
+            int lineStart = 0;
+            for (int i = 0; i < filled; i++) {
+                if (buffer[i] != '\n') {
+                    continue;
+                }
+                lineNumber++;
+                var lineEnd = i > lineStart && buffer[i - 1] == '\r' ? i - 1 : i;
+                if (lineEnd > lineStart) {
+                    try {
+                        parser.parse(buffer, lineStart, lineEnd, target);
+                    } catch (RuntimeException e) {
+                        throw new IllegalArgumentException(format("Error on line %d", lineNumber), e);
+                    }
+                    instructions++;
+                }
+                lineStart = i + 1;
+            }
+            //Move the incomplete line to the front
+            filled -= lineStart;
+            System.arraycopy(buffer, lineStart, buffer, 0, filled);
+            if (filled == buffer.length) {
+                grow();
+            }
+        }
+        return instructions;
+    }
+
+    private void grow() {
+        var bigger = new byte[buffer.length * 2];
+        System.arraycopy(buffer, 0, bigger, 0, buffer.length);
+        buffer = bigger;
+    }
+}
@@ -0,0 +1,246 @@
+package lilljegren.feed;
+
+import lilljegren.Level2View;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import static java.lang.String.format;
+
+/**
+ * <pre>
+ * Single pass parser for the plain text instruction format, dispatching straight to a Level2View
+ *
+ *   N#B:1.00:1000:10   new order    side(A/B):price:quantity:orderId
+ *   C#10               cancel       orderId
+ *   R#1.00:600:12      replace      price:quantity:orderId
+ *   T#600:10           trade        quantity:restingOrderId
+ *
+ * The long forms New, Cancel, Replace and Trade are accepted as well
+ *
+ * Prices are parsed directly into fixed point ticks with the given number of decimals, more decimals are only accepted if they are 0.
+ * The ticks are turned into the BigDecimal of the Level2View through a PriceCache, so once warmed up parsing a message
+ * allocates nothing. Only errors allocate, they are reported with an IllegalArgumentException
+ *
+ * An instance keeps scratch state, so it is not thread safe
+ * </pre>
+ */
+public final class InstructionParser {
+
+    private final int priceScale;
+    private final PriceCache prices;
+
+    //Scratch for CharSequence input, so both inputs share the byte parser
+    private byte[] chars = new byte[128];
+
+    private byte[] buf;
+    private int from;
+    private int pos;
+    private int end;
+
+    /**
+     * @param priceScale number of decimals of a price tick e.g. 2 for cents, prices are passed to the book with this scale
+     */
+    public InstructionParser(int priceScale) {
+        if (priceScale < 0 || priceScale > 18) {
+            throw new IllegalArgumentException(format("priceScale must be in [0,18] was:[%d]", priceScale));
+        }
+        this.priceScale = priceScale;
+        this.prices = new PriceCache(priceScale, 4096);
+    }
+
+    public int getPriceScale() {
+        return priceScale;
+    }
+
+    public void parse(CharSequence line, Level2View target) {
+        var length = line.length();
+        if (length > chars.length) {
+            chars = new byte[Math.max(length, chars.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            var c = line.charAt(i);
+            chars[i] = c < 128 ? (byte) c : (byte) '?';//Never valid, so reported as a parse error
+        }
+        parse(chars, 0, length, target);
+    }
+
+    /**
+     * Parse one message of ASCII bytes
+     * @param bytes buffer holding the message
+     * @param from index of the first byte
+     * @param to index after the last byte, line terminators must not be included
+     * @param target book receiving the event
+     */
+    public void parse(byte[] bytes, int from, int to, Level2View target) {
+        buf = bytes;
+        this.from = from;
+        pos = from;
+        end = to;
+        var type = pos < end ? buf[pos] : 0;
+        skipType();
+        switch (type) {
+            case 'N': {
+                var side = parseSide();
+                var price = parsePrice();
+                var quantity = parseLong(':');
+                var orderId = parseLong('\0');
+                target.onNewOrder(side, price, quantity, orderId);
+                break;
+            }
+            case 'C': {
+                var orderId = parseLong('\0');
+                target.onCancelOrder(orderId);
+                break;
+            }
+            case 'R': {
+                var price = parsePrice();
+                var quantity = parseLong(':');
+                var orderId = parseLong('\0');
+                target.onReplaceOrder(price, quantity, orderId);
+                break;
+            }
+            case 'T': {
+                var quantity = parseLong(':');
+                var orderId = parseLong('\0');
+                target.onTrade(quantity, orderId);
+                break;
+            }
+            default:
+                throw parseError(from, "unknown type");
+        }
+    }
+
+    //Skip the type up to and including the #, the long form must match the name
+    private void skipType() {
+        var start = pos;
+        while (pos < end && buf[pos] != '#') {
+            pos++;
+        }
+        if (pos == end) {
+            throw parseError(start, "missing #");
+        }
+        var length = pos - start;
+        if (length > 1 && !matchesTypeName(start, length)) {
+            throw parseError(start, "unknown type");
+        }
+        pos++;
+    }
+
+    private boolean matchesTypeName(int start, int length) {
+        String name;
+        switch (buf[start]) {
+            case 'N': name = "New"; break;
+            case 'C': name = "Cancel"; break;
+            case 'R': name = "Replace"; break;
+            case 'T': name = "Trade"; break;
+            default: return false;
+        }
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 1; i < length; i++) {
+            if (buf[start + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Level2View.Side parseSide() {
+        if (pos + 1 < end && buf[pos + 1] == ':') {
+            var c = buf[pos];
+            pos += 2;
+            if (c == 'A') {
+                return Level2View.Side.ASK;
+            }
+            if (c == 'B') {
+                return Level2View.Side.BID;
+            }
+        }
+        throw parseError(pos, "bad side");
+    }
+
+    private BigDecimal parsePrice() {
+        var start = pos;
+        var negative = pos < end && buf[pos] == '-';
+        if (negative) {
+            pos++;
+        }
+        long ticks = 0;
+        int digits = 0;
+        int decimals = -1;//-1 before the decimal point
+        for (; pos < end && buf[pos] != ':'; pos++) {
+            var c = buf[pos];
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (decimals >= priceScale) {
+                    if (c != '0') {
+                        throw parseError(start, "more decimals than the price scale");
+                    }
+                    continue;
+                }
+                if (++digits > 18) {
+                    throw parseError(start, "price too large");
+                }
+                ticks = ticks * 10 + (c - '0');
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else {
+                throw parseError(start, "bad price");
+            }
+        }
+        if (digits == 0 || pos == end) {
+            throw parseError(start, "bad price");
+        }
+        pos++;//Skip :
+        var missingDecimals = priceScale - Math.max(decimals, 0);
+        if (digits + missingDecimals > 18) {
+            throw parseError(start, "price too large");
+        }
+        for (int i = 0; i < missingDecimals; i++) {
+            ticks *= 10;
+        }
+        return prices.get(negative ? -ticks : ticks);
+    }
+
+    /**
+     * @param terminator ':' if a field must follow or '\0' if the long must end the message
+     */
+    private long parseLong(char terminator) {
+        var start = pos;
+        var negative = pos < end && buf[pos] == '-';
+        if (negative) {
+            pos++;
+        }
+        //Accumulated negative as in Long.parseLong, so the whole range including Long.MIN_VALUE is accepted
+        var limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        var multiplyLimit = limit / 10;
+        long value = 0;
+        int digits = 0;
+        for (; pos < end && buf[pos] != ':'; pos++) {
+            var c = buf[pos];
+            if (c < '0' || c > '9') {
+                throw parseError(start, "bad number");
+            }
+            var digit = c - '0';
+            if (value < multiplyLimit || value * 10 < limit + digit) {
+                throw parseError(start, "number too large");
+            }
+            value = value * 10 - digit;
+            digits++;
+        }
+        if (digits == 0 || (terminator == ':') == (pos == end)) {
+            throw parseError(start, "bad number");
+        }
+        pos++;//Skip :
+        return negative ? value : -value;
+    }
+
+    private IllegalArgumentException parseError(int at, String reason) {
+        return new IllegalArgumentException(format("Can't parse %s, %s at index %d",
+                new String(buf, from, end - from, StandardCharsets.US_ASCII), reason, at - from));
+    }
+}
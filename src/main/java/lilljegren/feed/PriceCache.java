@@ -0,0 +1,42 @@
+package lilljegren.feed;
+
+import java.math.BigDecimal;
+
+/**
+ * <pre>
+ * Direct mapped cache from a fixed point price in ticks to the BigDecimal the Level2View interface needs
+ *
+ * An instrument trades in a narrow band of prices, so after warm up nearly every lookup is a hit and no BigDecimal is created.
+ * On a collision the slot is simply overwritten, so the cache never grows
+ * </pre>
+ */
+final class PriceCache {
+
+    private final int scale;
+    private final long[] ticks;
+    private final BigDecimal[] prices;
+    private final int mask;
+
+    /**
+     * @param scale number of decimals in a tick
+     * @param size number of slots, rounded up to a power of 2
+     */
+    PriceCache(int scale, int size) {
+        this.scale = scale;
+        var capacity = Integer.highestOneBit(Math.max(1, size) * 2 - 1);
+        this.ticks = new long[capacity];
+        this.prices = new BigDecimal[capacity];
+        this.mask = capacity - 1;
+    }
+
+    BigDecimal get(long priceInTicks) {
+        var slot = (int) ((priceInTicks * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        var price = prices[slot];
+        if (price == null || ticks[slot] != priceInTicks) {
+            price = BigDecimal.valueOf(priceInTicks, scale);
+            ticks[slot] = priceInTicks;
+            prices[slot] = price;
+        }
+        return price;
+    }
+}
@@ -0,0 +1,117 @@
+package lilljegren.history;
+
+import lilljegren.Level2View;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <pre>
+ * Layout of a bucket file, one file per time bucket named &lt;start time&gt;.depth
+ *
+ *   header  64 bytes, see the offsets below
+ *   time    column of varint time deltas, the first relative to the bucket start
+ *   key     column of zigzag varint deltas of the level key ( price in ticks * 2 + side )
+ *   size    column of varint sizes of the level after the change, 0 means the level was removed
+ *
+ * Each column has the same fixed capacity, the file is sparse so unused capacity costs no disk
+ * A bucket starts with a keyframe, the full book at the start time, so any time can be answered from a single bucket
+ *
+ * The header is updated after each record, so a reader sees complete records only
+ * </pre>
+ */
+final class BucketFormat {
+
+    static final int MAGIC = 0x4C324448;//L2DH
+    static final int HEADER_SIZE = 64;
+
+    static final int MAGIC_AT = 0;
+    static final int START_AT = 4;
+    static final int SCALE_AT = 12;
+    static final int CAPACITY_AT = 16;
+    static final int COUNT_AT = 20;
+    static final int TIME_LENGTH_AT = 24;
+    static final int KEY_LENGTH_AT = 28;
+    static final int SIZE_LENGTH_AT = 32;
+
+    static final String SUFFIX = ".depth";
+
+    //Largest varint of a long
+    static final int MAX_VARINT = 10;
+
+    private BucketFormat() {
+    }
+
+    static long key(Level2View.Side side, long priceInTicks) {
+        return priceInTicks << 1 | side.ordinal();
+    }
+
+    static long ticksOf(long key) {
+        return key >> 1;
+    }
+
+    static Level2View.Side sideOf(long key) {
+        return (key & 1) == 0 ? Level2View.Side.BID : Level2View.Side.ASK;
+    }
+
+    static long timeColumn() {
+        return HEADER_SIZE;
+    }
+
+    static long keyColumn(int capacity) {
+        return HEADER_SIZE + (long) capacity;
+    }
+
+    static long sizeColumn(int capacity) {
+        return HEADER_SIZE + 2L * capacity;
+    }
+
+    static long fileSize(int capacity) {
+        return HEADER_SIZE + 3L * capacity;
+    }
+
+    /**
+     * @return number of bytes written
+     */
+    static int putVarLong(ByteBuffer buffer, int at, long value) {
+        int written = 0;
+        while ((value & ~0x7FL) != 0) {
+            buffer.put(at + written++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put(at + written++, (byte) value);
+        return written;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Sequential reader of one column
+     */
+    static final class Column {
+        private final ByteBuffer buffer;
+        private int at;
+
+        Column(ByteBuffer buffer, long start) {
+            this.buffer = buffer;
+            this.at = (int) start;
+        }
+
+        long nextVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(at++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
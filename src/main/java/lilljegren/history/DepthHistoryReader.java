@@ -0,0 +1,186 @@
+package lilljegren.history;
+
+import lilljegren.Level2View;
+import lilljegren.Validation;
+import lilljegren.scalable.Level2ViewScalable;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.TreeMap;
+
+import static java.lang.String.format;
+import static lilljegren.history.BucketFormat.*;
+
+/**
+ * <pre>
+ * Queries on the bucket files written by a DepthHistoryWriter
+ *
+ * The files are memory mapped read only when the reader is created, so later buckets need a new reader
+ * Finding the bucket of a time is O(LogB), the bucket is then decoded from its start, so the cost of a query
+ * is bounded by the size of one bucket rather than the length of the history
+ *
+ * A price that isn't on the tick grid of the files, or any price of an empty history, can't have a level so its size is 0
+ * </pre>
+ */
+public final class DepthHistoryReader {
+
+    /**
+     * Receives the size of a level over an interval
+     */
+    @FunctionalInterface
+    public interface SizeConsumer {
+        void accept(long time, long size);
+    }
+
+    private final TreeMap<Long, MappedByteBuffer> buckets = new TreeMap<>();
+    //Only meaningful if there are buckets
+    private int priceScale;
+
+    public DepthHistoryReader(Path directory) throws IOException {
+        try (var files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (var file : files) {
+                try (var channel = FileChannel.open(file)) {
+                    var bucket = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    if (bucket.getInt(MAGIC_AT) != MAGIC) {
+                        throw new IOException(format("%s is not a depth history file", file));
+                    }
+                    if (!buckets.isEmpty() && priceScale != bucket.getInt(SCALE_AT)) {
+                        throw new IOException(format("%s has price scale %d but other files have %d", file, bucket.getInt(SCALE_AT), priceScale));
+                    }
+                    priceScale = bucket.getInt(SCALE_AT);
+                    buckets.put(bucket.getLong(START_AT), bucket);
+                }
+            }
+        }
+    }
+
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    /**
+     * @return the book as it was at the time, with one order per level. Empty if the time is before the history
+     */
+    public Level2View bookAsOf(long time) {
+        var levels = new LevelMap();
+        var bucket = buckets.floorEntry(time);
+        if (bucket != null) {
+            new Records(bucket.getValue()).forEachUntil(time, levels::put);
+        }
+        var book = new Level2ViewScalable(Validation.TRUSTED);
+        long[] orderId = {0};
+        levels.forEach((key, size) -> book.onNewOrder(sideOf(key), toPrice(ticksOf(key)), size, orderId[0]++));
+        return book;
+    }
+
+    public long getSizeAsOf(long time, Level2View.Side side, BigDecimal price) {
+        var bucket = buckets.floorEntry(time);
+        if (bucket == null || !isOnGrid(price)) {
+            return 0;
+        }
+        var key = key(side, toTicks(price));
+        long[] size = {0};
+        new Records(bucket.getValue()).forEachUntil(time, (k, s) -> {
+            if (k == key) {
+                size[0] = s;
+            }
+        });
+        return size[0];
+    }
+
+    /**
+     * Report the size at the start of the interval and then each time it changed, up to and including the end of the interval
+     */
+    public void forEachSize(Level2View.Side side, BigDecimal price, long from, long to, SizeConsumer consumer) {
+        if (!isOnGrid(price)) {
+            consumer.accept(from, 0);
+            return;
+        }
+        var key = key(side, toTicks(price));
+        long[] last = {getSizeAsOf(from, side, price)};
+        consumer.accept(from, last[0]);
+        var firstBucket = buckets.floorKey(from);
+        var tail = firstBucket == null ? buckets.headMap(to, true) : buckets.subMap(firstBucket, true, to, true);
+        for (var bucket : tail.values()) {
+            new Records(bucket).forEach((time, k, s) -> {
+                //Keyframes repeat the size at the start of each bucket, so only report real changes
+                if (k == key && time > from && time <= to && s != last[0]) {
+                    last[0] = s;
+                    consumer.accept(time, s);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return true if a level at the price can be in the files, i.e. the price is a whole number of ticks that fits a long
+     */
+    private boolean isOnGrid(BigDecimal price) {
+        if (buckets.isEmpty()) {
+            return false;
+        }
+        var ticks = price.setScale(priceScale, RoundingMode.DOWN);
+        return ticks.compareTo(price) == 0 && ticks.unscaledValue().bitLength() < Long.SIZE;
+    }
+
+    private long toTicks(BigDecimal price) {
+        return price.setScale(priceScale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    private BigDecimal toPrice(long ticks) {
+        return BigDecimal.valueOf(ticks, priceScale);
+    }
+
+    @FunctionalInterface
+    private interface RecordConsumer {
+        void accept(long time, long key, long size);
+    }
+
+    /**
+     * Decodes the three columns of a bucket in step
+     */
+    private static final class Records {
+        private final int count;
+        private final long start;
+        private final Column times;
+        private final Column keys;
+        private final Column sizes;
+
+        Records(MappedByteBuffer bucket) {
+            var capacity = bucket.getInt(CAPACITY_AT);
+            count = bucket.getInt(COUNT_AT);
+            start = bucket.getLong(START_AT);
+            times = new Column(bucket, timeColumn());
+            keys = new Column(bucket, keyColumn(capacity));
+            sizes = new Column(bucket, sizeColumn(capacity));
+        }
+
+        void forEach(RecordConsumer consumer) {
+            long time = start;
+            long key = 0;
+            for (int i = 0; i < count; i++) {
+                time += times.nextVarLong();
+                key += unzigzag(keys.nextVarLong());
+                consumer.accept(time, key, sizes.nextVarLong());
+            }
+        }
+
+        void forEachUntil(long until, LevelMap.LevelConsumer consumer) {
+            long time = start;
+            long key = 0;
+            for (int i = 0; i < count; i++) {
+                time += times.nextVarLong();
+                if (time > until) {
+                    return;
+                }
+                key += unzigzag(keys.nextVarLong());
+                consumer.accept(key, sizes.nextVarLong());
+            }
+        }
+    }
+}
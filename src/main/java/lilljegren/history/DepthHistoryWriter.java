@@ -0,0 +1,205 @@
+package lilljegren.history;
+
+import lilljegren.Level2View;
+import lilljegren.LevelChangeListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.LongSupplier;
+
+import static java.lang.String.format;
+import static java.nio.file.StandardOpenOption.*;
+import static java.util.Objects.requireNonNull;
+import static lilljegren.history.BucketFormat.*;
+
+/**
+ * <pre>
+ * Records level changes of a book into time bucketed, memory mapped column files, see BucketFormat for the layout
+ *
+ * Register it as a LevelChangeListener on a book, times are taken from the clock, or call record directly with the time of the event.
+ * Times must not go backwards, an earlier time is recorded as the last time
+ *
+ * A new bucket is started when the time passes the bucket duration, or early if a column is full,
+ * each bucket starts with the full book as of its start so queries never read more than one bucket to find the state
+ *
+ * The buckets are shared mappings, so the records are visible to readers at once and the OS writes them back in the background.
+ * Nothing is forced to disk on the book's thread when a bucket rolls over, only close forces the last bucket.
+ * A crash of the process loses nothing, a crash of the OS may lose the records not yet written back
+ *
+ * Prices are stored as ticks with the given scale, a price with more decimals is rejected with an ArithmeticException
+ *
+ * As a listener it is called in the middle of an update of the book, so it never throws into the book. The first failure,
+ * e.g. an IO error, a column too small for the keyframe or a price with too many decimals, stops the recording and is kept.
+ * It is available from getFailure and thrown by the next call to record and by close
+ *
+ * Not thread safe, a DepthHistoryReader should only be opened on closed buckets
+ * </pre>
+ */
+public final class DepthHistoryWriter implements LevelChangeListener, Closeable {
+
+    private final Path directory;
+    private final int priceScale;
+    private final long bucketDuration;
+    private final int columnCapacity;
+    private final LongSupplier clock;
+
+    //The current book, needed for the keyframe of the next bucket
+    private final LevelMap levels = new LevelMap();
+
+    private MappedByteBuffer bucket;
+    private long bucketStart;
+    private long bucketEnd;
+    private int count;
+    private int timeLength;
+    private int keyLength;
+    private int sizeLength;
+    private long lastTime = Long.MIN_VALUE;
+    private long lastKey;
+    //First failure, nothing is recorded after it
+    private Exception failure;
+
+    /**
+     * @param directory where the bucket files are written, created if missing
+     * @param priceScale number of decimals of a price tick
+     * @param bucketDuration length of a bucket in the unit of the clock
+     * @param columnCapacity bytes reserved per column and bucket
+     * @param clock time of the level changes received as a listener
+     */
+    public DepthHistoryWriter(Path directory, int priceScale, long bucketDuration, int columnCapacity, LongSupplier clock) throws IOException {
+        if (bucketDuration <= 0) {
+            throw new IllegalArgumentException(format("bucketDuration must be greater than 0 was:[%d]", bucketDuration));
+        }
+        if (columnCapacity < MAX_VARINT) {
+            throw new IllegalArgumentException(format("columnCapacity must be at least %d was:[%d]", MAX_VARINT, columnCapacity));
+        }
+        this.directory = Files.createDirectories(directory);
+        this.priceScale = priceScale;
+        this.bucketDuration = bucketDuration;
+        this.columnCapacity = columnCapacity;
+        this.clock = requireNonNull(clock);
+    }
+
+    @Override
+    public void onLevelChange(Level2View.Side side, BigDecimal price, long delta, long newSize) {
+        if (failure != null) {
+            return;
+        }
+        try {
+            record(clock.getAsLong(), side, toTicks(price), newSize);
+        } catch (IOException | RuntimeException e) {
+            //Throwing would leave the book half updated
+            failure = e;
+        }
+    }
+
+    /**
+     * @throws IOException if writing fails or an earlier failure stopped the recording
+     */
+    public void record(long time, Level2View.Side side, long priceInTicks, long newSize) throws IOException {
+        checkFailure();
+        try {
+            append(time, side, priceInTicks, newSize);
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            throw e;
+        }
+    }
+
+    /**
+     * @return the failure that stopped the recording or null if recording
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Recording stopped after an earlier failure", failure);
+        }
+    }
+
+    private void append(long time, Level2View.Side side, long priceInTicks, long newSize) throws IOException {
+        time = Math.max(time, lastTime);
+        if (bucket == null || time >= bucketEnd) {
+            startBucket(time - Math.floorMod(time, bucketDuration));
+        } else if (!fits()) {
+            startBucket(time);
+        }
+        var key = key(side, priceInTicks);
+        append(time, key, newSize);
+        levels.put(key, newSize);
+    }
+
+    long toTicks(BigDecimal price) {
+        return price.setScale(priceScale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    private boolean fits() {
+        return Math.max(timeLength, Math.max(keyLength, sizeLength)) + MAX_VARINT <= columnCapacity;
+    }
+
+    private void append(long time, long key, long size) {
+        timeLength += putVarLong(bucket, (int) timeColumn() + timeLength, time - lastTime);
+        keyLength += putVarLong(bucket, (int) keyColumn(columnCapacity) + keyLength, zigzag(key - lastKey));
+        sizeLength += putVarLong(bucket, (int) sizeColumn(columnCapacity) + sizeLength, size);
+        lastTime = time;
+        lastKey = key;
+        count++;
+        //Lengths before count, so the count never covers a partly written record
+        bucket.putInt(TIME_LENGTH_AT, timeLength);
+        bucket.putInt(KEY_LENGTH_AT, keyLength);
+        bucket.putInt(SIZE_LENGTH_AT, sizeLength);
+        bucket.putInt(COUNT_AT, count);
+    }
+
+    private void startBucket(long start) throws IOException {
+        if (bucket != null && start == bucketStart) {
+            throw new IllegalStateException(format("Column capacity %d is too small for the records at time %d", columnCapacity, start));
+        }
+        finishBucket();
+        var file = directory.resolve(start + SUFFIX);
+        try (var channel = FileChannel.open(file, CREATE_NEW, READ, WRITE)) {
+            //The mapping stays valid after the channel is closed
+            bucket = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(columnCapacity));
+        }
+        bucketStart = start;
+        bucketEnd = start - Math.floorMod(start, bucketDuration) + bucketDuration;
+        count = timeLength = keyLength = sizeLength = 0;
+        lastTime = start;
+        lastKey = 0;
+        bucket.putInt(MAGIC_AT, MAGIC);
+        bucket.putLong(START_AT, start);
+        bucket.putInt(SCALE_AT, priceScale);
+        bucket.putInt(CAPACITY_AT, columnCapacity);
+        //Keyframe
+        levels.forEach((key, size) -> {
+            if (!fits()) {
+                throw new IllegalStateException(format("Column capacity %d is too small for a book of %d levels", columnCapacity, levels.size()));
+            }
+            append(start, key, size);
+        });
+    }
+
+    private void finishBucket() {
+        //No force, an msync per bucket would stall the book, the OS writes back the pages anyway
+        bucket = null;
+    }
+
+    /**
+     * @throws IOException if a failure stopped the recording, the buckets up to the failure are still complete
+     */
+    @Override
+    public void close() throws IOException {
+        if (bucket != null) {
+            bucket.force();
+        }
+        finishBucket();
+        checkFailure();
+    }
+}
@@ -0,0 +1,51 @@
+package lilljegren.history;
+
+import lilljegren.primitive.LongKeyTable;
+
+/**
+ * <pre>
+ * Primitive map from a level key ( price in ticks and side, see BucketFormat.key ) to the size of the level
+ *
+ * The sizes are the values of a LongKeyTable, the tag only marks a used slot. A size of 0 removes the level
+ * as a level with size 0 doesn't exist
+ * </pre>
+ */
+final class LevelMap {
+
+    private static final int USED = 1;
+
+    @FunctionalInterface
+    interface LevelConsumer {
+        void accept(long key, long size);
+    }
+
+    private final LongKeyTable sizes = new LongKeyTable(32);
+
+    long get(long key) {
+        var slot = sizes.find(key);
+        return slot < 0 ? 0 : sizes.getValue(slot);
+    }
+
+    /**
+     * @param size new size, 0 removes the level
+     */
+    void put(long key, long size) {
+        if (size == 0) {
+            sizes.remove(key);
+        } else {
+            sizes.put(key, USED, size);
+        }
+    }
+
+    void forEach(LevelConsumer consumer) {
+        sizes.forEach((key, tag, size) -> consumer.accept(key, size));
+    }
+
+    int size() {
+        return sizes.size();
+    }
+
+    void clear() {
+        sizes.clear();
+    }
+}
@@ -0,0 +1,217 @@
+package lilljegren.primitive;
+
+import java.util.Arrays;
+
+import static java.lang.String.format;
+
+/**
+ * <pre>
+ * Hash table from a long key to an int tag and a long value, used where a Map&lt;Long,..&gt; would cost an object per key
+ *
+ * Open addressing with linear probing on three primitive arrays, a slot is 20 bytes and the table is kept at most half full.
+ * The tag of a used slot is never 0, 0 marks a free slot so keys can take any value. Users pack what they need into
+ * the tag and value e.g. the book and side of an order and its remaining quantity
+ *
+ * Keys are spread with Fibonacci hashing, as ids are often sequential. Removal uses backward shifting,
+ * so there are no tombstones and lookups don't degrade with churn. clear keeps the allocated arrays
+ *
+ * Access is by slot, find returns the slot of a key and the tag and value are read and written through it,
+ * so a lookup followed by an update only probes once. A slot is only valid until the next put or remove
+ *
+ * The arrays can have at most MAX_CAPACITY slots, so at most MAX_KEYS keys, beyond that put throws IllegalStateException
+ *
+ * Not thread safe
+ * </pre>
+ */
+public final class LongKeyTable {
+
+    //Largest power of two array length
+    public static final int MAX_CAPACITY = 1 << 30;
+    public static final int MAX_KEYS = MAX_CAPACITY >> 1;
+
+    @FunctionalInterface
+    public interface Visitor {
+        void accept(long key, int tag, long value);
+    }
+
+    private final int maxCapacity;
+    private long[] keys;
+    private int[] tags;
+    private long[] values;
+    private int mask;
+    private int shift;
+    private int size;
+
+    /**
+     * @param expectedKeys number of keys expected at the same time, the table doesn't have to grow until then, at most MAX_KEYS
+     */
+    public LongKeyTable(int expectedKeys) {
+        this(expectedKeys, MAX_CAPACITY);
+    }
+
+    /**
+     * @param maxCapacity max number of slots, a power of two from 2 to MAX_CAPACITY e.g. to test a full table without allocating gigabytes
+     */
+    public LongKeyTable(int expectedKeys, int maxCapacity) {
+        if (Integer.bitCount(maxCapacity) != 1 || maxCapacity < 2 || maxCapacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException(format("maxCapacity must be a power of two in [2,%d] was:[%d]", MAX_CAPACITY, maxCapacity));
+        }
+        if (expectedKeys < 0 || expectedKeys > maxCapacity >> 1) {
+            throw new IllegalArgumentException(format("expectedKeys must be in [0,%d] was:[%d]", maxCapacity >> 1, expectedKeys));
+        }
+        this.maxCapacity = maxCapacity;
+        //Half full at most, so twice the keys rounded up to a power of two, can't overflow as expectedKeys <= 2^29
+        var capacity = Integer.highestOneBit(Math.max(8, expectedKeys) * 2 - 1) << 1;
+        allocate(Math.min(capacity, maxCapacity));
+    }
+
+    /**
+     * @return the slot of the key or -1 if the key is absent
+     */
+    public int find(long key) {
+        var slot = slotOf(key);
+        while (tags[slot] != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Add a key or overwrite the tag and value of a present key
+     * @param tag anything but 0
+     * @return the slot of the key
+     */
+    public int put(long key, int tag, long value) {
+        if (tag == 0) {
+            throw new IllegalArgumentException(format("The tag of key:[%d] can't be 0", key));
+        }
+        var slot = find(key);
+        if (slot < 0) {
+            //Grow before adding, so a full table is left as it was
+            if (size == (keys.length >> 1)) {
+                if (keys.length == maxCapacity) {
+                    throw new IllegalStateException(format("The table is full with %d keys, can't add key:[%d]", size, key));
+                }
+                allocate(keys.length << 1);
+            }
+            slot = freeSlotOf(key);
+            keys[slot] = key;
+            size++;
+        }
+        tags[slot] = tag;
+        values[slot] = value;
+        return slot;
+    }
+
+    public int getTag(int slot) {
+        return tags[slot];
+    }
+
+    public long getValue(int slot) {
+        return values[slot];
+    }
+
+    public void setValue(int slot, long value) {
+        values[slot] = value;
+    }
+
+    /**
+     * @return false if the key was absent
+     */
+    public boolean remove(long key) {
+        var slot = find(key);
+        if (slot < 0) {
+            return false;
+        }
+        removeAt(slot);
+        return true;
+    }
+
+    /**
+     * Remove the key of a slot, the slots of other keys may change
+     */
+    public void removeAt(int slot) {
+        //Shift back the following entries that would no longer be reachable
+        var free = slot;
+        var next = (slot + 1) & mask;
+        while (tags[next] != 0) {
+            var home = slotOf(keys[next]);
+            //The entry can move to the free slot unless its home lies cyclically in (free, next]
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                tags[free] = tags[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        tags[free] = 0;
+        size--;
+    }
+
+    /**
+     * Visit the keys in slot order, the table must not be changed while visiting
+     */
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (tags[i] != 0) {
+                visitor.accept(keys[i], tags[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Remove all keys, the arrays are kept
+     */
+    public void clear() {
+        Arrays.fill(tags, 0);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of slots, the memory used is 20 bytes per slot
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    private int slotOf(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    private int freeSlotOf(long key) {
+        var slot = slotOf(key);
+        while (tags[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        var oldKeys = keys;
+        var oldTags = tags;
+        var oldValues = values;
+        keys = new long[capacity];
+        tags = new int[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        if (oldKeys != null) {
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldTags[i] != 0) {
+                    var slot = freeSlotOf(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    tags[slot] = oldTags[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package lilljegren.routing;
+
+import lilljegren.Level2View;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <pre>
+ * Front end for a feed covering many instruments, where cancels, replaces and trades only carry the order id
+ *
+ * New orders are routed on the instrument's book index ( look it up once with getBookIndex ) and the id is recorded
+ * in an OrderRoutingTable, so the other events are dispatched to the right book with one primitive lookup
+ *
+ * The table also keeps the remaining quantity of each order, as the Level2View doesn't say when an order is gone,
+ * so a route is removed on cancel or once the order is fully traded. endOfSession drops any routes left
+ *
+ * Not thread safe, all events for the books must come through the same thread
+ * </pre>
+ */
+public class Level2ViewRouter {
+
+    private final Map<String, Integer> instrument2Book = new HashMap<>();
+    private Level2View[] books = new Level2View[0];
+    private final OrderRoutingTable routes;
+
+    /**
+     * @param expectedOrders number of orders expected to be live at the same time over all books, at most OrderRoutingTable.MAX_IDS
+     */
+    public Level2ViewRouter(int expectedOrders) {
+        this.routes = new OrderRoutingTable(expectedOrders);
+    }
+
+    /**
+     * @return the index of the book, used when sending new orders
+     */
+    public int addBook(String instrument, Level2View book) {
+        requireNonNull(book);
+        if (instrument2Book.containsKey(requireNonNull(instrument))) {
+            throw new IllegalArgumentException(format("A book for instrument:[%s] already exist", instrument));
+        }
+        var index = books.length;
+        books = Arrays.copyOf(books, index + 1);
+        books[index] = book;
+        instrument2Book.put(instrument, index);
+        return index;
+    }
+
+    /**
+     * @return the index of the book for the instrument or OrderRoutingTable.NO_BOOK
+     */
+    public int getBookIndex(String instrument) {
+        return instrument2Book.getOrDefault(instrument, OrderRoutingTable.NO_BOOK);
+    }
+
+    public Level2View getBook(int index) {
+        return books[index];
+    }
+
+    public Level2View getBook(String instrument) {
+        var index = getBookIndex(instrument);
+        return index == OrderRoutingTable.NO_BOOK ? null : books[index];
+    }
+
+    /**
+     * @return the side of a routed order or null if not routed
+     */
+    public Level2View.Side getSide(long orderId) {
+        return routes.getSide(orderId);
+    }
+
+    public void onNewOrder(int book, Level2View.Side side, BigDecimal price, long quantity, long orderId) {
+        //Book first, so nothing is routed if the book rejects the order
+        books[book].onNewOrder(side, price, quantity, orderId);
+        routes.put(orderId, book, side, quantity);
+    }
+
+    public void onCancelOrder(long orderId) {
+        bookOf(orderId).onCancelOrder(orderId);
+        routes.remove(orderId);
+    }
+
+    public void onReplaceOrder(BigDecimal price, long quantity, long orderId) {
+        bookOf(orderId).onReplaceOrder(price, quantity, orderId);
+        routes.setQuantity(orderId, quantity);
+    }
+
+    public void onTrade(long quantity, long restingOrderId) {
+        bookOf(restingOrderId).onTrade(quantity, restingOrderId);
+        //The books remove an order traded down to 0, so the route goes as well
+        routes.trade(restingOrderId, quantity);
+    }
+
+    /**
+     * Drop all routes, the books are left untouched
+     */
+    public void endOfSession() {
+        routes.clear();
+    }
+
+    /**
+     * @return number of routed ids i.e. live orders over all books
+     */
+    public int getRoutedCount() {
+        return routes.size();
+    }
+
+    private Level2View bookOf(long orderId) {
+        var book = routes.getBook(orderId);
+        if (book == OrderRoutingTable.NO_BOOK) {
+            throw new IllegalArgumentException(format("No book for order with id:[%d]", orderId));
+        }
+        return books[book];
+    }
+}
@@ -0,0 +1,154 @@
+package lilljegren.routing;
+
+import lilljegren.Level2View;
+import lilljegren.primitive.LongKeyTable;
+
+import static java.lang.String.format;
+
+/**
+ * <pre>
+ * Maps an order id to the index of the book holding the order, its side and its remaining quantity
+ *
+ * The routes are kept in a LongKeyTable, so there are no objects per id and no boxing,
+ * a slot is 20 bytes and the table is kept at most half full i.e. 40-80 bytes per id compared to ~80 for a HashMap&lt;Long,..&gt;
+ * with an object per id, and nothing for the garbage collector to trace
+ *
+ * The remaining quantity lets the route be removed as soon as the order is fully traded, see trade
+ * clear is meant for bulk expiry at the end of a session and keeps the allocated arrays
+ *
+ * At most MAX_IDS ids can be routed, beyond that put throws IllegalStateException
+ *
+ * Not thread safe
+ * </pre>
+ */
+public final class OrderRoutingTable {
+
+    public static final int NO_BOOK = -1;
+    public static final int MAX_BOOK = (1 << 30) - 1;
+    public static final int MAX_IDS = LongKeyTable.MAX_KEYS;
+
+    //values() clones the array on every call
+    private static final Level2View.Side[] SIDES = Level2View.Side.values();
+
+    //Tag (book << 1 | side) + 1, so it is never 0, and the remaining quantity as value
+    private final LongKeyTable routes;
+
+    /**
+     * @param expectedIds number of ids expected to be live at the same time, the table doesn't have to grow until then, at most MAX_IDS
+     */
+    public OrderRoutingTable(int expectedIds) {
+        this(expectedIds, LongKeyTable.MAX_CAPACITY);
+    }
+
+    /**
+     * @param maxCapacity max number of slots, a power of two, to test a full table without allocating gigabytes
+     */
+    OrderRoutingTable(int expectedIds, int maxCapacity) {
+        this.routes = new LongKeyTable(expectedIds, maxCapacity);
+    }
+
+    public OrderRoutingTable() {
+        this(1024);
+    }
+
+    /**
+     * Add or overwrite the route of an id
+     * @param quantity the quantity of the order
+     */
+    public void put(long orderId, int book, Level2View.Side side, long quantity) {
+        if (book < 0 || book > MAX_BOOK) {
+            throw new IllegalArgumentException(format("book must be in [0,%d] was:[%d]", MAX_BOOK, book));
+        }
+        routes.put(orderId, ((book << 1) | side.ordinal()) + 1, quantity);
+    }
+
+    /**
+     * @return the book of the order or NO_BOOK if the id is unknown
+     */
+    public int getBook(long orderId) {
+        var slot = routes.find(orderId);
+        return slot < 0 ? NO_BOOK : bookOf(routes.getTag(slot));
+    }
+
+    /**
+     * @return the side of the order or null if the id is unknown
+     */
+    public Level2View.Side getSide(long orderId) {
+        var slot = routes.find(orderId);
+        return slot < 0 ? null : SIDES[(routes.getTag(slot) - 1) & 1];
+    }
+
+    /**
+     * @return the remaining quantity of the order or 0 if the id is unknown
+     */
+    public long getQuantity(long orderId) {
+        var slot = routes.find(orderId);
+        return slot < 0 ? 0 : routes.getValue(slot);
+    }
+
+    /**
+     * Set the remaining quantity of a known id e.g. when the order is replaced
+     * @return false if the id is unknown
+     */
+    public boolean setQuantity(long orderId, long quantity) {
+        var slot = routes.find(orderId);
+        if (slot < 0) {
+            return false;
+        }
+        routes.setValue(slot, quantity);
+        return true;
+    }
+
+    /**
+     * Reduce the remaining quantity of an order by a traded quantity, the route is removed once nothing remains
+     * @return the remaining quantity, 0 if the route was removed or the id is unknown
+     */
+    public long trade(long orderId, long quantity) {
+        var slot = routes.find(orderId);
+        if (slot < 0) {
+            return 0;
+        }
+        var remaining = routes.getValue(slot) - quantity;
+        if (remaining > 0) {
+            routes.setValue(slot, remaining);
+            return remaining;
+        }
+        routes.removeAt(slot);
+        return 0;
+    }
+
+    /**
+     * @return the book the order was routed to or NO_BOOK if the id was unknown
+     */
+    public int remove(long orderId) {
+        var slot = routes.find(orderId);
+        if (slot < 0) {
+            return NO_BOOK;
+        }
+        var book = bookOf(routes.getTag(slot));
+        routes.removeAt(slot);
+        return book;
+    }
+
+    /**
+     * Remove all routes, e.g. at the end of a session. The arrays are kept so the next session doesn't have to grow them again
+     */
+    public void clear() {
+        routes.clear();
+    }
+
+    public int size() {
+        return routes.size();
+    }
+
+    /**
+     * @return number of slots, the memory used is 20 bytes per slot
+     */
+    public int capacity() {
+        return routes.capacity();
+    }
+
+    private static int bookOf(int route) {
+        return (route - 1) >>> 1;
+    }
+}
@@ -0,0 +1,166 @@
+package lilljegren.scalable;
+
+import lilljegren.Level2View;
+
+import java.math.BigDecimal;
+import java.util.function.LongSupplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <pre>
+ * Statistics derived from the top of book, maintained by the book after each event so all reads are O(1)
+ *
+ * The top level of each side is re-read after every event ( O(LogL) ) and the derived values are only
+ * recomputed, and the listener notified, when the price or size at the top of either side changed
+ *
+ * Values that need both sides are null or NaN while a side is empty
+ *
+ * The time weighted depth is the average number of levels since the stats were enabled or last reset,
+ * time is taken from the clock given when enabling, any unit works as long as it is monotonic
+ * </pre>
+ */
+public final class BookStats {
+
+    /**
+     * Notified on the thread updating the book when the top of book changed
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onStatsChange(BookStats stats);
+    }
+
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+
+    private final Page bids;
+    private final Page asks;
+    private final LongSupplier clock;
+    private Listener listener;
+
+    //Top levels seen last time, a level is only changed in place so identity and size tells if the top changed
+    private Page.Level bidLevel;
+    private Page.Level askLevel;
+    private long bidSize;
+    private long askSize;
+
+    private BigDecimal mid;
+    private BigDecimal spread;
+    private double microPrice = Double.NaN;
+    private double imbalance = Double.NaN;
+
+    private long startTime;
+    private long lastTime;
+    private long bidDepth;
+    private long askDepth;
+    private double bidDepthTime;
+    private double askDepthTime;
+
+    BookStats(Page bids, Page asks, LongSupplier clock) {
+        this.bids = bids;
+        this.asks = asks;
+        this.clock = requireNonNull(clock);
+        resetTimeWeighting();
+        update();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Restart the time weighting from the current time, e.g. at the start of a session
+     */
+    public void resetTimeWeighting() {
+        startTime = lastTime = clock.getAsLong();
+        bidDepthTime = askDepthTime = 0;
+    }
+
+    void update() {
+        var now = clock.getAsLong();
+        bidDepthTime += (double) bidDepth * (now - lastTime);
+        askDepthTime += (double) askDepth * (now - lastTime);
+        lastTime = now;
+        bidDepth = bids.getBookDepth();
+        askDepth = asks.getBookDepth();
+
+        var newBidLevel = bids.getTopLevel();
+        var newAskLevel = asks.getTopLevel();
+        var newBidSize = newBidLevel == null ? 0 : newBidLevel.size;
+        var newAskSize = newAskLevel == null ? 0 : newAskLevel.size;
+        if (newBidLevel == bidLevel && newAskLevel == askLevel && newBidSize == bidSize && newAskSize == askSize) {
+            return;
+        }
+        bidLevel = newBidLevel;
+        askLevel = newAskLevel;
+        bidSize = newBidSize;
+        askSize = newAskSize;
+        if (bidLevel == null || askLevel == null) {
+            mid = spread = null;
+            microPrice = imbalance = Double.NaN;
+        } else {
+            spread = askLevel.price.subtract(bidLevel.price);
+            mid = bidLevel.price.add(askLevel.price).divide(TWO);//Always exact when dividing by 2
+            double total = bidSize + askSize;
+            microPrice = (bidLevel.price.doubleValue() * askSize + askLevel.price.doubleValue() * bidSize) / total;
+            imbalance = (bidSize - askSize) / total;
+        }
+        if (listener != null) {
+            listener.onStatsChange(this);
+        }
+    }
+
+    public BigDecimal getBestBid() {
+        return bidLevel == null ? null : bidLevel.price;
+    }
+
+    public BigDecimal getBestAsk() {
+        return askLevel == null ? null : askLevel.price;
+    }
+
+    /**
+     * @param side the side
+     * @return the aggregated quantity on the best level of the side, 0 if the side is empty
+     */
+    public long getTopSize(Level2View.Side side) {
+        return side == Level2View.Side.BID ? bidSize : askSize;
+    }
+
+    public BigDecimal getMid() {
+        return mid;
+    }
+
+    /**
+     * @return best ask - best bid, negative if the book is crossed
+     */
+    public BigDecimal getSpread() {
+        return spread;
+    }
+
+    /**
+     * @return the mid weighted by the size on the opposite side, leaning towards the side that is more likely to trade through
+     */
+    public double getMicroPrice() {
+        return microPrice;
+    }
+
+    /**
+     * @return (bidSize - askSize) / (bidSize + askSize) of the top levels, in the range [-1,1]
+     */
+    public double getImbalance() {
+        return imbalance;
+    }
+
+    /**
+     * @param side the side
+     * @return the number of levels on the side averaged over time since the stats were enabled or reset
+     */
+    public double getTimeWeightedDepth(Level2View.Side side) {
+        var now = clock.getAsLong();
+        var depth = side == Level2View.Side.BID ? bidDepth : askDepth;
+        if (now == startTime) {
+            return depth;
+        }
+        var depthTime = side == Level2View.Side.BID ? bidDepthTime : askDepthTime;
+        return (depthTime + (double) depth * (now - lastTime)) / (now - startTime);
+    }
+}
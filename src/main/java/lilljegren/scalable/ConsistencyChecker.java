@@ -0,0 +1,115 @@
+package lilljegren.scalable;
+
+import lilljegren.Level2View;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.String.format;
+
+/**
+ * <pre>
+ * Verifies the invariants between the id mapping and the pages of a Level2ViewScalable
+ *
+ *  - every order in the id mapping rests on the level of its price on the page of its side
+ *  - every order on a page is the same instance as the one in the id mapping
+ *  - the queue of each level is correctly linked both ways and its count is the number of orders
+ *  - no level is empty and the aggregated size of a level is the sum of its orders
+ *  - the depth is the number of distinct prices and the top of book the best price of all orders
+ *
+ * This is O(N) and meant to be run out of band, with the feed validation relaxed (see Validation.TRUSTED)
+ * this is the way to detect a corrupt book. The book is not thread safe, so the check must be run on the thread updating the book
+ * or while that thread is paused
+ * </pre>
+ */
+final class ConsistencyChecker {
+
+    private final Map<Long, Order> id2Order;
+    private final Map<Level2View.Side, Page> sides;
+    private final List<String> violations = new ArrayList<>();
+    //Orders found on the pages, compared by identity as are the orders of the queues
+    private final Set<Order> onPages = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    ConsistencyChecker(Map<Long, Order> id2Order, Map<Level2View.Side, Page> sides) {
+        this.id2Order = id2Order;
+        this.sides = sides;
+    }
+
+    List<String> check() {
+        long ordersOnPages = 0;
+        for (var page : sides.values()) {
+            ordersOnPages += checkPage(page);
+        }
+        if (ordersOnPages != id2Order.size()) {
+            violations.add(format("Pages hold %d orders but %d orders are mapped by id", ordersOnPages, id2Order.size()));
+        }
+        for (var order : id2Order.values()) {
+            if (!onPages.contains(order)) {
+                violations.add(format("Order with id:[%d] is not on the %s page at price %s", order.getOrderId(), order.getSide(), order.getPrice()));
+            }
+        }
+        return violations;
+    }
+
+    private long checkPage(Page page) {
+        long orders = 0;
+        BigDecimal best = null;
+        BigDecimal previousLevel = null;
+        for (var level : page.getLevels()) {
+            //Strictly ordered levels means each price has exactly one level, so depth is the number of distinct prices
+            if (previousLevel != null && !isBetter(page.getSide(), previousLevel, level.price)) {
+                violations.add(format("Level %s on the %s page is not worse than the previous level %s", level.price, page.getSide(), previousLevel));
+            }
+            previousLevel = level.price;
+            if (level.isEmpty()) {
+                violations.add(format("Empty level %s on the %s page", level.price, page.getSide()));
+            }
+            long size = 0;
+            int count = 0;
+            Order previous = null;
+            for (var order = level.first; order != null; previous = order, order = order.next) {
+                if (order.previous != previous) {
+                    violations.add(format("Order with id:[%d] on level %s is not linked back to the previous order", order.getOrderId(), level.price));
+                }
+                if (++count > level.count || !onPages.add(order)) {
+                    violations.add(format("Queue of level %s on the %s page has a cycle or an order on several levels", level.price, page.getSide()));
+                    break;
+                }
+                size += order.getQuantity();
+                if (order.getPrice().compareTo(level.price) != 0) {
+                    violations.add(format("Order with id:[%d] at price %s is on level %s", order.getOrderId(), order.getPrice(), level.price));
+                }
+                if (id2Order.get(order.getOrderId()) != order) {
+                    violations.add(format("Order with id:[%d] on the %s page is not the mapped version", order.getOrderId(), page.getSide()));
+                }
+                if (best == null || isBetter(page.getSide(), order.getPrice(), best)) {
+                    best = order.getPrice();
+                }
+            }
+            if (previous != level.last) {
+                violations.add(format("Last order of level %s on the %s page is not the end of the queue", level.price, page.getSide()));
+            }
+            if (count != level.count) {
+                violations.add(format("Level %s on the %s page has count %d but %d orders", level.price, page.getSide(), level.count, count));
+            }
+            if (size != level.size) {
+                violations.add(format("Level %s on the %s page has size %d but the orders sum to %d", level.price, page.getSide(), level.size, size));
+            }
+            orders += count;
+        }
+        var top = page.getTopOfBook();
+        if (top == null ? best != null : best == null || top.compareTo(best) != 0) {
+            violations.add(format("Top of the %s page is %s but the best order price is %s", page.getSide(), top, best));
+        }
+        return orders;
+    }
+
+    private static boolean isBetter(Level2View.Side side, BigDecimal price, BigDecimal than) {
+        return side == Level2View.Side.BID ? price.compareTo(than) > 0 : price.compareTo(than) < 0;
+    }
+}
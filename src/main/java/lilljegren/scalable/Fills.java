@@ -0,0 +1,105 @@
+package lilljegren.scalable;
+
+import java.math.BigDecimal;
+
+import static java.lang.String.format;
+
+/**
+ * <pre>
+ * The fills of a simulated aggressive order, see Level2ViewScalable.simulate
+ *
+ * The fills are kept in arrays sized once, so one instance can be reused for any number of simulations without allocating.
+ * The prices are the BigDecimal instances of the levels of the book, so they are shared and not copied
+ * If the arrays are too small the simulation stops early and isTruncated returns true
+ * </pre>
+ */
+public final class Fills {
+
+    private final long[] orderIds;
+    private final long[] quantities;
+    private final BigDecimal[] prices;
+    private int count;
+    private long filledQuantity;
+    private boolean truncated;
+
+    /**
+     * @param capacity max number of fills, i.e. resting orders matched by one simulation
+     */
+    public Fills(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(format("Capacity must be greater than 0, was:%d", capacity));
+        }
+        orderIds = new long[capacity];
+        quantities = new long[capacity];
+        prices = new BigDecimal[capacity];
+    }
+
+    void clear() {
+        //The prices are left as they are, they refer to levels anyway and clearing them would cost a pass over the array
+        count = 0;
+        filledQuantity = 0;
+        truncated = false;
+    }
+
+    /**
+     * @return false if the fill doesn't fit
+     */
+    boolean add(long orderId, long quantity, BigDecimal price) {
+        if (count == orderIds.length) {
+            truncated = true;
+            return false;
+        }
+        orderIds[count] = orderId;
+        quantities[count] = quantity;
+        prices[count] = price;
+        count++;
+        filledQuantity += quantity;
+        return true;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return orderIds.length;
+    }
+
+    /**
+     * @return id of the resting order of the fill at the index, fills are in the order they would happen
+     */
+    public long getOrderId(int index) {
+        checkIndex(index);
+        return orderIds[index];
+    }
+
+    public long getQuantity(int index) {
+        checkIndex(index);
+        return quantities[index];
+    }
+
+    public BigDecimal getPrice(int index) {
+        checkIndex(index);
+        return prices[index];
+    }
+
+    /**
+     * @return the sum of the quantities of the fills
+     */
+    public long getFilledQuantity() {
+        return filledQuantity;
+    }
+
+    /**
+     * @return true if there were more resting orders to match than room for fills
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(format("Fill index:[%d] with count:[%d]", index, count));
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package lilljegren.scalable;
 
 import lilljegren.Level2View;
+import lilljegren.LevelChangeListener;
+import lilljegren.Validation;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.LongSupplier;
 
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
@@ -19,7 +24,16 @@ import static java.util.Objects.requireNonNull;
  *
  * Each side of the book is managed by an instance of the Page class
  *
- * This version will throw IllegalArgumentException for bad arguments, care is taken to only modify data structure if all args are ok
+ * This version will by default throw IllegalArgumentException for bad arguments, care is taken to only modify data structure if all args are ok
+ * With Validation.ASSERT or Validation.TRUSTED the checks are left to assertions or skipped, see Validation
+ *
+ * Changes to the aggregated size of the levels can be observed with a LevelChangeListener
+ * A listener that throws doesn't stop the update or the other listeners, the exception is rethrown once the book is fully updated
+ *
+ * Orders at the same price are kept in time priority, so simulate can tell which resting orders an aggressive order would fill
+ *
+ * The estimated heap used is reported by getMemoryFootprint. A book can be pre sized for the expected number of orders, so the
+ * order index doesn't rehash while filling up, and given a max number of orders after which new orders are rejected with IllegalStateException
  * </pre>
  */
 public class Level2ViewScalable implements Level2View {
@@ -28,75 +42,288 @@ public class Level2ViewScalable implements Level2View {
     private final EnumMap<Side,Page> sides;
 
     //To be able to deal with cancel and replace we need a mapping to the order id
-    private final Map<Long,Order> id2Order= new HashMap<>();
+    private final Map<Long,Order> id2Order;
+
+    private final int maxOrders;
+    //Largest size of the index, hash tables don't shrink so this is what its table is sized for
+    private int peakOrders;
+
+    private final Validation validation;
+    //The validation policy as final flags, so the checks are just a predictable branch
+    private final boolean strict;
+    private final boolean asserting;
+
+    //Null unless enabled, to avoid the cost when not used
+    private BookStats stats;
+
+    //Array rather than a list as it is iterated on every change and rarely modified
+    private LevelChangeListener[] listeners = new LevelChangeListener[0];
+    //First exception thrown by a listener during the current event, rethrown when the event is complete
+    private RuntimeException listenerFailure;
 
     public Level2ViewScalable(){
+        this(Validation.STRICT);
+    }
+
+    public Level2ViewScalable(Validation validation){
+        this(validation, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param expectedOrders the order index is sized to hold this many orders without rehashing, at most the 805,306,368 a HashMap can be sized for
+     * @param maxOrders new orders beyond this many live orders are rejected, in any Validation mode
+     */
+    public Level2ViewScalable(Validation validation, int expectedOrders, int maxOrders){
+        if (expectedOrders < 0 || maxOrders < expectedOrders) {
+            throw new IllegalArgumentException(format("Need 0 <= expectedOrders <= maxOrders, was expectedOrders:[%d] maxOrders:[%d]", expectedOrders, maxOrders));
+        }
+        if (expectedOrders > MemoryFootprint.MAX_PRESIZED) {
+            throw new IllegalArgumentException(format("expectedOrders can be at most %d, was:[%d]", MemoryFootprint.MAX_PRESIZED, expectedOrders));
+        }
+        this.id2Order = expectedOrders == 0 ? new HashMap<>() : new HashMap<>((int) MemoryFootprint.tableCapacity(expectedOrders));
+        this.peakOrders = expectedOrders;
+        this.maxOrders = maxOrders;
+        this.validation = requireNonNull(validation);
+        this.strict = validation == Validation.STRICT;
+        this.asserting = validation == Validation.ASSERT;
         sides = new EnumMap<>(Side.class);
         for(var s : Side.values()){
-            sides.put(s, new Page(s));
+            sides.put(s, new Page(s, this::fireLevelChange));
         }
         assert sides.size() == 2;
     }
 
-    private Page getPage(Side side){
+    /**
+     * Register a listener for level changes, the listener is immediately sent the levels already in the book
+     * so it doesn't matter if it is added before or after the book has been populated
+     * @param listener the listener
+     */
+    public void addLevelChangeListener(LevelChangeListener listener){
+        requireNonNull(listener);
+        for (var page : sides.values()) {
+            page.replayTo(listener);
+        }
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    public void removeLevelChangeListener(LevelChangeListener listener){
+        listeners = Arrays.stream(listeners).filter(l -> l != listener).toArray(LevelChangeListener[]::new);
+    }
+
+    private void fireLevelChange(Side side, BigDecimal price, long delta, long newSize){
+        for (var listener : listeners) {
+            //The book is in the middle of an update, so a failing listener must not cut it short
+            try {
+                listener.onLevelChange(side, price, delta, newSize);
+            } catch (RuntimeException e) {
+                if (listenerFailure == null) {
+                    listenerFailure = e;
+                } else if (listenerFailure != e) {
+                    listenerFailure.addSuppressed(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Start maintaining top of book statistics, they are updated after each event
+     * @param clock time source for the time weighted values e.g. System::nanoTime
+     * @return the statistics
+     */
+    public BookStats enableStats(LongSupplier clock){
+        stats = new BookStats(getPage(Side.BID), getPage(Side.ASK), clock);
+        return stats;
+    }
+
+    /**
+     * @return the statistics or null if not enabled
+     */
+    public BookStats getStats(){
+        return stats;
+    }
+
+    public Validation getValidation() {
+        return validation;
+    }
+
+    public int getMaxOrders() {
+        return maxOrders;
+    }
+
+    /**
+     * Estimate the heap used by the book, see MemoryFootprint for the assumptions
+     */
+    public MemoryFootprint getMemoryFootprint() {
+        return MemoryFootprint.measure(id2Order.size(), peakOrders, sides.values());
+    }
+
+    /**
+     * Verify the internal invariants of the book, intended to be run out of band e.g. between bursts or when the feed is idle
+     * @return a description of each violated invariant, empty if the book is consistent
+     * @see ConsistencyChecker
+     */
+    public List<String> checkConsistency() {
+        return new ConsistencyChecker(id2Order, sides).check();
+    }
+
+    Page getPage(Side side){
         return sides.get(requireNonNull(side));
     }
 
     @Override
     public void onNewOrder(Side side, BigDecimal price, long quantity, long orderId) {
-        if (id2Order.containsKey(orderId)) {
-            throw new IllegalArgumentException(format("An order with id:[%d] already exist", orderId));
+        checkOrder(price, quantity);
+        if (id2Order.size() >= maxOrders) {
+            throw new IllegalStateException(format("The book is full with maxOrders:[%d], can't add order id:[%d]", maxOrders, orderId));
+        }
+        var newOrder = new Order(side, price, quantity, orderId);
+        var page = getPage(side);
+        if (strict) {
+            //Single lookup, putIfAbsent leaves the map untouched if the id is taken
+            if (id2Order.putIfAbsent(orderId, newOrder) != null) {
+                throw new IllegalArgumentException(format("An order with id:[%d] already exist", orderId));
+            }
+        } else {
+            //putIfAbsent so a duplicate caught by the assert doesn't replace the mapped order
+            var prev = id2Order.putIfAbsent(orderId, newOrder);
+            assert !asserting || prev == null : "Order with id " + orderId + " already existed";
+        }
+        page.addOrder(newOrder);
+        if (id2Order.size() > peakOrders) {
+            peakOrders = id2Order.size();
+        }
+        completeEvent();
+    }
+
+    /**
+     * Remove all orders e.g. before loading a snapshot, listeners are sent the removal of every level so anything
+     * attached to the book, like the statistics or a consolidated view, stays in line with it
+     */
+    public void clear() {
+        for (var page : sides.values()) {
+            page.clear();
         }
-        var newOrder = new Order(side, price, quantity, orderId);//Args are checked in order constructor
-        id2Order.put(orderId, newOrder);
-        getPage(side).addOrder(newOrder);
+        id2Order.clear();
+        completeEvent();
     }
 
     @Override
     public void onCancelOrder(long orderId) {
+        cancel(orderId);
+        completeEvent();
+    }
+
+    private void cancel(long orderId) {
         //Remove from outer mapping
         var prev = id2Order.remove(orderId);
-        if (prev == null) {
+        if (strict && prev == null) {
             throw createOrderMissingException(orderId);
         }
+        assert !asserting || prev != null : "Order with id " + orderId + " doesn't exist";
         //Remove from page
         getPage(prev.getSide()).removeOrder(prev);
     }
 
     @Override
     public void onReplaceOrder(BigDecimal price, long quantity, long orderId) {
+        replace(price, quantity, orderId);
+        completeEvent();
+    }
+
+    private void replace(BigDecimal price, long quantity, long orderId) {
         //Check that we didn't already have it
         var prev = id2Order.get(orderId);
-        if (prev == null) {
+        if (strict && prev == null) {
             throw createOrderMissingException(orderId);
         }
-        var nextVersion = prev.with(price, quantity);//px and qty args will be checked here
+        assert !asserting || prev != null : "No order with id " + orderId + " exist. Can't replace";
+        checkOrder(price, quantity);
+        var nextVersion = prev.with(price, quantity);
         id2Order.put(orderId, nextVersion);
-
-        var page = getPage(prev.getSide());
-        page.removeOrder(prev);
-        page.addOrder(nextVersion);
+        //Keeps the time priority if only the quantity is reduced
+        getPage(prev.getSide()).replaceOrder(prev, nextVersion);
     }
 
     @Override
     public void onTrade(long quantity, long restingOrderId) {
-        if (quantity < 0) {
+        trade(quantity, restingOrderId);
+        completeEvent();
+    }
+
+    private void trade(long quantity, long restingOrderId) {
+        if (strict && quantity < 0) {
             throw new IllegalArgumentException(format("quantity can't be less than 0 was:[%d]", quantity));
         }
+        assert !asserting || quantity >= 0 : "Quantity can't be less than 0, was:" + quantity;
         //Same as compact version
         var prev = id2Order.get(restingOrderId);
-        if (prev == null) {
+        if (strict && prev == null) {
             throw createOrderMissingException(restingOrderId);
         }
+        assert !asserting || prev != null : "No order with id " + restingOrderId + " exist. Can't trade";
 
         var remaining = prev.getQuantity() - quantity;
         if (remaining > 0) {
-            onReplaceOrder(prev.getPrice(), remaining, restingOrderId);//Re-use
+            replace(prev.getPrice(), remaining, restingOrderId);//Re-use, a partial fill keeps the time priority
         } else {//Can discuss the if one should throw exception if trade quantity is higher than remaining
-            onCancelOrder(restingOrderId);
+            cancel(restingOrderId);
         }
     }
 
+    /**
+     * Simulate an aggressive order, matching the resting orders of the other side in price time priority, without changing the book
+     * Nothing is allocated, so this can be run many times e.g. by an order router comparing venues
+     * @param side side of the aggressive order, a BID matches the ASK side of the book
+     * @param quantity quantity of the aggressive order
+     * @param limit the worst price the aggressive order accepts or null to match at any price
+     * @param fills receives the fills, cleared first
+     * @return the quantity filled
+     */
+    public long simulate(Side side, long quantity, BigDecimal limit, Fills fills) {
+        requireNonNull(side);
+        fills.clear();
+        return getPage(side == Side.BID ? Side.ASK : Side.BID).match(quantity, limit, fills);
+    }
+
+    /**
+     * Apply the fills of a simulation as trades in one pass, the statistics are updated once at the end
+     * The fills must be applied before any other event, otherwise they may not match the book anymore
+     */
+    public void applyFills(Fills fills) {
+        try {
+            for (int i = 0; i < fills.getCount(); i++) {
+                trade(fills.getQuantity(i), fills.getOrderId(i));
+            }
+        } finally {
+            completeEvent();
+        }
+    }
+
+    /**
+     * Called once the book is fully updated by an event, a listener failure during the event is rethrown here
+     */
+    private void completeEvent() {
+        if (stats != null) {
+            stats.update();
+        }
+        var failure = listenerFailure;
+        if (failure != null) {
+            listenerFailure = null;
+            throw failure;
+        }
+    }
+
+    private void checkOrder(BigDecimal price, long quantity) {
+        if (strict) {
+            var error = Validation.describeInvalidOrder(price, quantity);
+            if (error != null) {
+                throw new IllegalArgumentException(error);
+            }
+        }
+        assert !asserting || Validation.describeInvalidOrder(price, quantity) == null : Validation.describeInvalidOrder(price, quantity);
+    }
+
 
     @Override
     public long getSizeForPriceLevel(Side side, BigDecimal price) {
@@ -115,6 +342,17 @@ public class Level2ViewScalable implements Level2View {
 
     }
 
+    /**
+     * The ladder of a side, best level first
+     * @param maxLevels max number of levels to copy, must not exceed the length of the arrays
+     * @param prices receives the price of each level
+     * @param sizes receives the aggregated quantity of each level
+     * @return the number of levels copied
+     */
+    public int getLevels(Side side, int maxLevels, BigDecimal[] prices, long[] sizes) {
+        return getPage(side).getLevels(prices, sizes, maxLevels);
+    }
+
     private IllegalArgumentException createOrderMissingException(long orderId) {
         return new IllegalArgumentException(format("No order with id:[%d] exist", orderId));
     }
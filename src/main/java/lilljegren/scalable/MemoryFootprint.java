@@ -0,0 +1,141 @@
+package lilljegren.scalable;
+
+import java.util.Collection;
+
+import static java.lang.String.format;
+
+/**
+ * <pre>
+ * Estimated heap used by a Level2ViewScalable, split into the orders, the price levels and the order id index
+ *
+ * The sizes are shallow object sizes on a 64 bit JVM with compressed oops and 8 byte alignment, the default below 32GB heaps.
+ * They are estimates to plan how many books fit in a JVM, use a heap dump for exact numbers
+ *
+ * The price of a level is counted once per level, if each order holds its own BigDecimal instance add PRICE per order
+ * Hash tables never shrink, so the index is sized from the largest number of orders the book has held
+ * The orders of a level are linked through the orders themselves, so the footprint only needs the counts and is O(1)
+ * </pre>
+ */
+public final class MemoryFootprint {
+
+    static final int REFERENCE = 4;
+    static final int ARRAY_HEADER = 16;
+
+    //Order: header 12, side 4, price 4, quantity 8, id 8, previous 4, next 4
+    static final int ORDER = 48;
+    //HashMap.Node 32 and the boxed Long key 16
+    static final int INDEX_ENTRY = 48;
+    //Level: header 12, price 4, first 4, last 4, count 4, size 8
+    static final int LEVEL = 40;
+    //TreeMap.Entry: header 12, key, value, left, right, parent 20, color 1
+    static final int TREE_ENTRY = 40;
+    //BigDecimal without a BigInteger, header 12, intVal, scale, precision, stringCache 16, intCompact 8
+    static final int PRICE = 40;
+    //The HashMap of the index
+    static final int INDEX = 48;
+
+    private static final int DEFAULT_TABLE = 16;
+    //Largest table of a HashMap, beyond it the map stops resizing
+    static final int MAX_TABLE = 1 << 30;
+    //Most entries a HashMap can be pre sized for without rehashing
+    static final int MAX_PRESIZED = MAX_TABLE / 4 * 3;
+
+    private final long orders;
+    private final long levels;
+    private final long orderBytes;
+    private final long levelBytes;
+    private final long indexBytes;
+
+    MemoryFootprint(long orders, long levels, long orderBytes, long levelBytes, long indexBytes) {
+        this.orders = orders;
+        this.levels = levels;
+        this.orderBytes = orderBytes;
+        this.levelBytes = levelBytes;
+        this.indexBytes = indexBytes;
+    }
+
+    /**
+     * @param peakOrders the largest number of orders the index has held, or its pre sized capacity if larger
+     */
+    static MemoryFootprint measure(int orders, int peakOrders, Collection<Page> pages) {
+        long levels = 0;
+        for (var page : pages) {
+            levels += page.getBookDepth();
+        }
+        return new MemoryFootprint(orders, levels, (long) orders * (ORDER + INDEX_ENTRY), levels * (LEVEL + TREE_ENTRY + PRICE), INDEX + table(peakOrders));
+    }
+
+    /**
+     * Estimate for planning, assumes the book never held more orders than now
+     * @return estimated bytes of a book with the given number of orders and levels
+     */
+    public static long estimate(long orders, long levels) {
+        return orders * (ORDER + INDEX_ENTRY) + levels * (LEVEL + TREE_ENTRY + PRICE) + INDEX + table(orders);
+    }
+
+    /**
+     * @return bytes of the table of a HashMap with the default load factor holding the given number of entries
+     */
+    static long table(long entries) {
+        var capacity = tableCapacity(entries);
+        return ARRAY_HEADER + capacity * REFERENCE;
+    }
+
+    /**
+     * @return capacity of the table of a HashMap holding the given number of entries, at most MAX_TABLE
+     */
+    static long tableCapacity(long entries) {
+        long capacity = DEFAULT_TABLE;
+        while (capacity < MAX_TABLE && capacity * 3 / 4 < entries) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    public long getOrders() {
+        return orders;
+    }
+
+    public long getLevels() {
+        return levels;
+    }
+
+    /**
+     * @return bytes of the orders including their entries in the index
+     */
+    public long getOrderBytes() {
+        return orderBytes;
+    }
+
+    /**
+     * @return bytes of the levels including their price and tree entry
+     */
+    public long getLevelBytes() {
+        return levelBytes;
+    }
+
+    /**
+     * @return fixed bytes of the order id index, its table is sized from the peak number of orders
+     */
+    public long getIndexBytes() {
+        return indexBytes;
+    }
+
+    public long getTotalBytes() {
+        return orderBytes + levelBytes + indexBytes;
+    }
+
+    public double getBytesPerOrder() {
+        return orders == 0 ? 0 : (double) orderBytes / orders;
+    }
+
+    public double getBytesPerLevel() {
+        return levels == 0 ? 0 : (double) levelBytes / levels;
+    }
+
+    @Override
+    public String toString() {
+        return format("orders:%d levels:%d orderBytes:%d levelBytes:%d indexBytes:%d totalBytes:%d",
+                orders, levels, orderBytes, levelBytes, indexBytes, getTotalBytes());
+    }
+}
@@ -4,13 +4,17 @@ import lilljegren.Level2View;
 
 import java.math.BigDecimal;
 
-import static java.util.Objects.requireNonNull;
-
 /**
- * Order with special implementation of equals and hashcode suited for the Page's data structure
+ * <pre>
+ * Order resting in the book, the fields are final except the links of the time ordered queue of its level
+ * The links are only touched by Page.Level, orders are compared by identity so a new version of an order is a different instance
+ * </pre>
  */
 final class Order {
 
+    //Queue of the level, see Page.Level
+    Order previous;
+    Order next;
 
     private final Level2View.Side side;
     private final long orderId;
@@ -18,13 +22,11 @@ final class Order {
     private final long quantity;
 
     Order(Level2View.Side side, BigDecimal price, long quantity, long orderId) {
-        this.side = requireNonNull(side);
-        this.price = requireNonNull(price);
+        //Arguments are checked by the book according to its Validation policy
+        this.side = side;
+        this.price = price;
         this.quantity = quantity;
         this.orderId = orderId;
-
-        assert price.compareTo(BigDecimal.ZERO) >= 0 :"Price must be greater or equal to 0, was:"+price;
-        assert quantity > 0:"Quantity must be greater than 0, was:"+quantity;
     }
 
 
@@ -34,7 +36,7 @@ final class Order {
     }
 
     /**
-     * Not used but likely useful for debugging
+     * Identifies the resting order in fills, while matching and in the consistency checks
      * @return the order id
      */
     public long getOrderId() {
@@ -54,20 +56,4 @@ final class Order {
         return new Order(this.side,price,quantity,this.orderId);
     }
 
-
-
-    //We determine equality based only on the order id, so that it works in the Page class
-    //As this class is only used in this package we can allow for this but one should be careful
-    @Override
-    public boolean equals(Object o){
-        if (o instanceof Order) {
-            return ((Order) o).orderId == this.orderId;
-        }
-        return false;
-    }
-    @Override
-    public int hashCode(){
-        return Long.hashCode(orderId);
-    }
-
 }
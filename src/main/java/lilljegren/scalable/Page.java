@@ -1,6 +1,7 @@
 package lilljegren.scalable;
 
 import lilljegren.Level2View;
+import lilljegren.LevelChangeListener;
 
 import java.math.BigDecimal;
 import java.util.*;
@@ -8,16 +9,26 @@ import java.util.*;
 /**
  * <pre>
  * Maintain the orders for a given side
- * Orders are kept in a kind of MultiMap keyed on the price, with a set of orders ( keyed only on the order id )
+ * Orders are kept in a kind of MultiMap keyed on the price, with a queue of orders in time priority for each price
  * This makes it very easy to implement the get methods, but some extra care is required when adding and removing the orders
+ * The queue is linked through the orders themselves, so adding or removing an order doesn't allocate beyond a new level
+ *
+ * Each level also keeps the aggregated quantity, so the size of a level is O(1) once the level is found
+ * and every change of the aggregated quantity is reported to the listener
  * </pre>
  */
 class Page {
 
+    private final Level2View.Side side;
+
     //Note as TreeMap use compare and not equals we can use BigDecimal as a key without having to worry about the scaling
-    private final TreeMap<BigDecimal, Set<Order>> level2Order;
+    private final TreeMap<BigDecimal, Level> level2Order;
+
+    private final LevelChangeListener listener;
 
-    Page(Level2View.Side side){
+    Page(Level2View.Side side, LevelChangeListener listener){
+        this.side = side;
+        this.listener = listener;
         Comparator<BigDecimal> c = Comparator.naturalOrder();//lowest ask is best
         if(side == Level2View.Side.BID){
             c= c.reversed();
@@ -26,25 +37,119 @@ class Page {
     }
 
     void addOrder(Order order){
-        var ordersOnLevel =level2Order.computeIfAbsent(order.getPrice(), o->new HashSet<>());//see equals and hashcode in Order class
-        ordersOnLevel.add(order);
+        var level =level2Order.computeIfAbsent(order.getPrice(), Level::new);
+        level.append(order);
+        level.size += order.getQuantity();
+        listener.onLevelChange(side, level.price, order.getQuantity(), level.size);
     }
 
     void removeOrder(Order order){
-        var ordersOnLevel =level2Order.get(order.getPrice());
-        assert ordersOnLevel != null;
-        ordersOnLevel.remove(order);
+        var level =level2Order.get(order.getPrice());
+        assert level != null;
+        level.unlink(order);
+        level.size -= order.getQuantity();
 
         //If the removed order was the last we must remove the level from the TreeMap, in order to keep book depth simple
-        if(ordersOnLevel.isEmpty()){
+        if(level.isEmpty()){
             level2Order.remove(order.getPrice());
         }
+        listener.onLevelChange(side, level.price, -order.getQuantity(), level.size);
+    }
+
+    /**
+     * Replace an order with a new version, a version at the same price and not larger keeps the time priority
+     * otherwise it goes to the back of the queue of its price as a new order would
+     */
+    void replaceOrder(Order prev, Order next){
+        if (prev.getPrice().compareTo(next.getPrice()) != 0 || next.getQuantity() > prev.getQuantity()) {
+            removeOrder(prev);
+            addOrder(next);
+            return;
+        }
+        var level = level2Order.get(prev.getPrice());
+        assert level != null;
+        level.swap(prev, next);
+        var delta = next.getQuantity() - prev.getQuantity();
+        if (delta != 0) {
+            level.size += delta;
+            listener.onLevelChange(side, level.price, delta, level.size);
+        }
+    }
+
+    /**
+     * Match an aggressive order against this page in price time priority without changing it
+     * The levels are walked with firstKey, higherKey and get as they don't allocate, unlike the entries and iterators of the TreeMap
+     * @param limit the worst price to match or null for any price
+     * @return the quantity filled, less than the quantity if the page or the fills ran out or the limit was reached
+     */
+    long match(long quantity, BigDecimal limit, Fills fills){
+        var remaining = quantity;
+        var comparator = level2Order.comparator();
+        var price = level2Order.isEmpty() ? null : level2Order.firstKey();
+        while (price != null && remaining > 0) {
+            if (limit != null && comparator.compare(price, limit) > 0) {
+                break;
+            }
+            var level = level2Order.get(price);
+            for (var order = level.first; order != null && remaining > 0; order = order.next) {
+                var fill = Math.min(remaining, order.getQuantity());
+                if (!fills.add(order.getOrderId(), fill, level.price)) {
+                    return quantity - remaining;
+                }
+                remaining -= fill;
+            }
+            price = level2Order.higherKey(price);
+        }
+        return quantity - remaining;
+    }
+
+    /**
+     * Remove all orders, the listener is told each level went to 0
+     */
+    void clear(){
+        for (var level : level2Order.values()) {
+            listener.onLevelChange(side, level.price, -level.size, 0);
+        }
+        level2Order.clear();
+    }
+
+    /**
+     * Report every level currently on this page to a listener, as if each level was created from an empty page
+     */
+    void replayTo(LevelChangeListener aListener){
+        level2Order.values().forEach(level -> aListener.onLevelChange(side, level.price, level.size, level.size));
+    }
+
+
+    /**
+     * Copy the best levels into the arrays
+     * @return number of levels copied
+     */
+    int getLevels(BigDecimal[] prices, long[] sizes, int maxLevels){
+        int count = 0;
+        for (var level : level2Order.values()) {
+            if (count == maxLevels) {
+                break;
+            }
+            prices[count] = level.price;
+            sizes[count] = level.size;
+            count++;
+        }
+        return count;
     }
 
+    Level getTopLevel(){
+        //firstKey and get rather than firstEntry, which allocates an entry on every call
+        return level2Order.isEmpty() ? null : level2Order.get(level2Order.firstKey());
+    }
 
+    Level getLevel(BigDecimal price){
+        return level2Order.get(price);
+    }
 
     long getSizeForPriceLevel(BigDecimal price){
-        return level2Order.getOrDefault(price,Set.of()).stream().mapToLong(Order::getQuantity).sum();
+        var level = getLevel(price);
+        return level == null ? 0 : level.size;
     }
 
     // get the number of price levels on the specified side
@@ -58,4 +163,84 @@ class Page {
         }
         return level2Order.firstKey();
     }
+
+    Level2View.Side getSide(){
+        return side;
+    }
+
+    /**
+     * @return the levels best first, for inspection only
+     */
+    Collection<Level> getLevels(){
+        return Collections.unmodifiableCollection(level2Order.values());
+    }
+
+    /**
+     * The orders resting on one price level together with their aggregated quantity
+     * The price is the first price used for the level, so it is stable while the level exist even if later orders use another scale
+     * The orders form a doubly linked queue, oldest first, through the previous and next fields of the orders
+     */
+    static final class Level {
+        final BigDecimal price;
+        Order first;
+        Order last;
+        int count;
+        long size;
+
+        Level(BigDecimal price) {
+            this.price = price;
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        void append(Order order) {
+            order.previous = last;
+            order.next = null;
+            if (last == null) {
+                first = order;
+            } else {
+                last.next = order;
+            }
+            last = order;
+            count++;
+        }
+
+        void unlink(Order order) {
+            if (order.previous == null) {
+                first = order.next;
+            } else {
+                order.previous.next = order.next;
+            }
+            if (order.next == null) {
+                last = order.previous;
+            } else {
+                order.next.previous = order.previous;
+            }
+            order.previous = null;
+            order.next = null;
+            count--;
+        }
+
+        /**
+         * Put a new version of an order in the place of the old one
+         */
+        void swap(Order old, Order order) {
+            order.previous = old.previous;
+            order.next = old.next;
+            if (old.previous == null) {
+                first = order;
+            } else {
+                old.previous.next = order;
+            }
+            if (old.next == null) {
+                last = order;
+            } else {
+                old.next.previous = order;
+            }
+            old.previous = null;
+            old.next = null;
+        }
+    }
 }
@@ -0,0 +1,70 @@
+package lilljegren.sequenced;
+
+import lilljegren.Level2View;
+
+import java.math.BigDecimal;
+
+/**
+ * An event kept while the book is waiting for a missing sequence number, only created when events arrive out of order
+ */
+final class Event {
+
+    enum Type {
+        NEW, CANCEL, REPLACE, TRADE
+    }
+
+    private final Type type;
+    private final long sequence;
+    private final Level2View.Side side;
+    private final BigDecimal price;
+    private final long quantity;
+    private final long orderId;
+
+    private Event(Type type, long sequence, Level2View.Side side, BigDecimal price, long quantity, long orderId) {
+        this.type = type;
+        this.sequence = sequence;
+        this.side = side;
+        this.price = price;
+        this.quantity = quantity;
+        this.orderId = orderId;
+    }
+
+    static Event newOrder(long sequence, Level2View.Side side, BigDecimal price, long quantity, long orderId) {
+        return new Event(Type.NEW, sequence, side, price, quantity, orderId);
+    }
+
+    static Event cancelOrder(long sequence, long orderId) {
+        return new Event(Type.CANCEL, sequence, null, null, 0, orderId);
+    }
+
+    static Event replaceOrder(long sequence, BigDecimal price, long quantity, long orderId) {
+        return new Event(Type.REPLACE, sequence, null, price, quantity, orderId);
+    }
+
+    static Event trade(long sequence, long quantity, long restingOrderId) {
+        return new Event(Type.TRADE, sequence, null, null, quantity, restingOrderId);
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    void applyTo(Level2View book) {
+        switch (type) {
+            case NEW:
+                book.onNewOrder(side, price, quantity, orderId);
+                break;
+            case CANCEL:
+                book.onCancelOrder(orderId);
+                break;
+            case REPLACE:
+                book.onReplaceOrder(price, quantity, orderId);
+                break;
+            case TRADE:
+                book.onTrade(quantity, orderId);
+                break;
+            default:
+                throw new IllegalStateException("Unknown type:" + type);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package lilljegren.sequenced;
+
+import lilljegren.Level2View;
+
+import java.math.BigDecimal;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <pre>
+ * Sequence aware front of a book, events carry the venue's sequence number and are applied strictly in sequence
+ *
+ * In sequence events go straight to the book without any allocation. When a gap is detected the book is marked stale
+ * and later events are buffered until either
+ *  - the missing events arrive ( e.g. a retransmission ), the buffer is then drained and the book is live again
+ *  - resynchronise is called with a snapshot, the book is cleared and loaded from the snapshot and the buffered events after the snapshot are replayed
+ *
+ * Events with a sequence number that is already applied are ignored as duplicates
+ *
+ * If the book rejects an event, or the buffer overflows, the book can't be trusted any more and stays stale until resynchronised
+ *
+ * The book is rebuilt in place, so listeners, statistics or a consolidated view attached to it stay attached and see
+ * the removal of the old levels followed by the snapshot
+ *
+ * Events can only be sent with their sequence number, so this is not a Level2View itself. getView gives a read only
+ * SequencedView of the book for queries, it answers from the last consistent state so readers should check its isStale before acting on them
+ * </pre>
+ */
+public class Level2ViewSequenced {
+
+    private final Level2View book;
+    private final Runnable clear;
+    private final SequencedView view;
+    private final int maxBuffered;
+
+    private long lastSequence;
+
+    //Events after a gap keyed on sequence, so retransmitted events are put back in order
+    private final TreeMap<Long, Event> buffered = new TreeMap<>();
+    //Set when only a snapshot can bring the book back
+    private boolean needsSnapshot;
+    private boolean stale;
+
+    /**
+     * @param book the book, events must only be sent to it through this
+     * @param clear removes all orders from the book before a snapshot is loaded e.g. Level2ViewScalable::clear
+     * @param lastSequence the sequence number before the first expected event
+     * @param maxBuffered max number of events buffered while stale, beyond that the oldest are dropped
+     */
+    public <B extends Level2View> Level2ViewSequenced(B book, Consumer<? super B> clear, long lastSequence, int maxBuffered) {
+        if (maxBuffered <= 0) {
+            throw new IllegalArgumentException(format("maxBuffered must be greater than 0 was:[%d]", maxBuffered));
+        }
+        requireNonNull(clear);
+        this.book = requireNonNull(book);
+        this.clear = () -> clear.accept(book);
+        this.view = new ReadOnlyView();
+        this.maxBuffered = maxBuffered;
+        this.lastSequence = lastSequence;
+    }
+
+    public <B extends Level2View> Level2ViewSequenced(B book, Consumer<? super B> clear) {
+        this(book, clear, 0, 1_000_000);
+    }
+
+    /**
+     * @return read only view of the book, which also tells if the book is stale
+     */
+    public SequencedView getView() {
+        return view;
+    }
+
+    public void onNewOrder(long sequence, Level2View.Side side, BigDecimal price, long quantity, long orderId) {
+        if (isNext(sequence)) {
+            lastSequence = sequence;
+            try {
+                book.onNewOrder(side, price, quantity, orderId);
+            } catch (RuntimeException e) {
+                throw reject(e);
+            }
+        } else {
+            buffer(Event.newOrder(sequence, side, price, quantity, orderId));
+        }
+    }
+
+    public void onCancelOrder(long sequence, long orderId) {
+        if (isNext(sequence)) {
+            lastSequence = sequence;
+            try {
+                book.onCancelOrder(orderId);
+            } catch (RuntimeException e) {
+                throw reject(e);
+            }
+        } else {
+            buffer(Event.cancelOrder(sequence, orderId));
+        }
+    }
+
+    public void onReplaceOrder(long sequence, BigDecimal price, long quantity, long orderId) {
+        if (isNext(sequence)) {
+            lastSequence = sequence;
+            try {
+                book.onReplaceOrder(price, quantity, orderId);
+            } catch (RuntimeException e) {
+                throw reject(e);
+            }
+        } else {
+            buffer(Event.replaceOrder(sequence, price, quantity, orderId));
+        }
+    }
+
+    public void onTrade(long sequence, long quantity, long restingOrderId) {
+        if (isNext(sequence)) {
+            lastSequence = sequence;
+            try {
+                book.onTrade(quantity, restingOrderId);
+            } catch (RuntimeException e) {
+                throw reject(e);
+            }
+        } else {
+            buffer(Event.trade(sequence, quantity, restingOrderId));
+        }
+    }
+
+    /**
+     * Rebuild the book from a snapshot and replay the buffered events after the snapshot
+     * @param snapshotSequence the sequence number of the last event included in the snapshot
+     * @param snapshot populates the cleared book, typically with onNewOrder for each order in the snapshot
+     */
+    public void resynchronise(long snapshotSequence, Consumer<? super Level2View> snapshot) {
+        requireNonNull(snapshot);
+        //Stale until the snapshot is fully loaded, so a failure to load leaves the book waiting for another snapshot
+        needsSnapshot = true;
+        stale = true;
+        clear.run();
+        snapshot.accept(book);
+        lastSequence = snapshotSequence;
+        needsSnapshot = false;
+        buffered.headMap(snapshotSequence, true).clear();
+        drain();
+    }
+
+    /**
+     * @return true if events are missing or the book couldn't apply an event, queries then reflect an older state
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * @return the sequence number of the last event applied to the book
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public int getBufferedCount() {
+        return buffered.size();
+    }
+
+    private boolean isNext(long sequence) {
+        return !stale && sequence == lastSequence + 1;
+    }
+
+    private void buffer(Event event) {
+        if (event.getSequence() <= lastSequence) {
+            return;//Duplicate, already applied
+        }
+        stale = true;
+        buffered.put(event.getSequence(), event);
+        if (buffered.size() > maxBuffered) {
+            //The gap can't be filled any more
+            buffered.pollFirstEntry();
+            needsSnapshot = true;
+        }
+        drain();
+    }
+
+    private void drain() {
+        while (!needsSnapshot && !buffered.isEmpty() && buffered.firstKey() == lastSequence + 1) {
+            var event = buffered.pollFirstEntry().getValue();
+            lastSequence = event.getSequence();
+            try {
+                event.applyTo(book);
+            } catch (RuntimeException e) {
+                throw reject(e);
+            }
+        }
+        stale = needsSnapshot || !buffered.isEmpty();
+    }
+
+    private RuntimeException reject(RuntimeException e) {
+        needsSnapshot = true;
+        stale = true;
+        return new IllegalStateException(format("Event with sequence:[%d] was rejected, book is stale until resynchronised", lastSequence), e);
+    }
+
+    /**
+     * Queries of the book, the events must be sent with their sequence number so they throw UnsupportedOperationException
+     */
+    private final class ReadOnlyView implements SequencedView {
+
+        @Override
+        public boolean isStale() {
+            return stale;
+        }
+
+        @Override
+        public long getLastSequence() {
+            return lastSequence;
+        }
+
+        @Override
+        public void onNewOrder(Side side, BigDecimal price, long quantity, long orderId) {
+            throw createUnsequencedException();
+        }
+
+        @Override
+        public void onCancelOrder(long orderId) {
+            throw createUnsequencedException();
+        }
+
+        @Override
+        public void onReplaceOrder(BigDecimal price, long quantity, long orderId) {
+            throw createUnsequencedException();
+        }
+
+        @Override
+        public void onTrade(long quantity, long restingOrderId) {
+            throw createUnsequencedException();
+        }
+
+        @Override
+        public long getSizeForPriceLevel(Side side, BigDecimal price) {
+            return book.getSizeForPriceLevel(side, price);
+        }
+
+        @Override
+        public long getBookDepth(Side side) {
+            return book.getBookDepth(side);
+        }
+
+        @Override
+        public BigDecimal getTopOfBook(Side side) {
+            return book.getTopOfBook(side);
+        }
+
+        private UnsupportedOperationException createUnsequencedException() {
+            return new UnsupportedOperationException("The view is read only, events must be sent to Level2ViewSequenced with their sequence number");
+        }
+    }
+}
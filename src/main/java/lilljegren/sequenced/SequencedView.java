@@ -0,0 +1,24 @@
+package lilljegren.sequenced;
+
+import lilljegren.Level2View;
+
+/**
+ * <pre>
+ * Read only Level2View of a book fed by a Level2ViewSequenced, the events throw UnsupportedOperationException
+ *
+ * While stale the queries answer from the last consistent state, so readers holding only the view can tell
+ * whether to act on them
+ * </pre>
+ */
+public interface SequencedView extends Level2View {
+
+    /**
+     * @return true if events are missing or the book couldn't apply an event, queries then reflect an older state
+     */
+    boolean isStale();
+
+    /**
+     * @return the sequence number of the last event applied to the book
+     */
+    long getLastSequence();
+}
@@ -0,0 +1,134 @@
+package lilljegren.server;
+
+import lilljegren.Level2View;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import static java.lang.String.format;
+import static lilljegren.server.Protocol.*;
+
+/**
+ * <pre>
+ * Read only view of a book served by a BookServer, each query is one round trip on the connection
+ *
+ * The events must be sent to the book of the server, so the event methods throw UnsupportedOperationException
+ * Queries are synchronized as they share the connection, IO errors are thrown as UncheckedIOException
+ * </pre>
+ */
+public class BookClient implements Level2View, Closeable {
+
+    private final SocketChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(2 + MAX_PRICE_BYTES);
+    private final ByteBuffer in = ByteBuffer.allocateDirect(FRAME_HEADER + 4 + MAX_LADDER * (MAX_PRICE_BYTES + 8));
+
+    public BookClient(InetSocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+        channel.socket().setTcpNoDelay(true);
+    }
+
+    @Override
+    public synchronized long getSizeForPriceLevel(Side side, BigDecimal price) {
+        out.clear();
+        out.put(SIZE);
+        out.put((byte) side.ordinal());
+        if (!putPrice(out, price)) {
+            throw new IllegalArgumentException(format("price:[%s] is too long to send", price));
+        }
+        request(SIZE);
+        return in.getLong();
+    }
+
+    @Override
+    public synchronized long getBookDepth(Side side) {
+        out.clear();
+        out.put(DEPTH);
+        out.put((byte) side.ordinal());
+        request(DEPTH);
+        return in.getLong();
+    }
+
+    @Override
+    public synchronized BigDecimal getTopOfBook(Side side) {
+        out.clear();
+        out.put(TOP);
+        out.put((byte) side.ordinal());
+        request(TOP);
+        var present = in.get() != 0;
+        var price = readPrice();
+        return present ? price : null;
+    }
+
+    /**
+     * The best levels of a side
+     * @return number of levels copied into the arrays
+     */
+    public synchronized int getLevels(Side side, int maxLevels, BigDecimal[] prices, long[] sizes) {
+        out.clear();
+        out.put(LADDER);
+        out.put((byte) side.ordinal());
+        out.putInt(maxLevels);
+        request(LADDER);
+        var count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            prices[i] = readPrice();
+            sizes[i] = in.getLong();
+        }
+        return count;
+    }
+
+    private void request(byte type) {
+        try {
+            out.flip();
+            writeFully(channel, out);
+            var received = readFrame(channel, in);
+            if (received != type) {
+                throw new IOException(format("Expected response %d but got %d", type, received));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private BigDecimal readPrice() {
+        try {
+            return getPrice(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void onNewOrder(Side side, BigDecimal price, long quantity, long orderId) {
+        throw createReadOnlyException();
+    }
+
+    @Override
+    public void onCancelOrder(long orderId) {
+        throw createReadOnlyException();
+    }
+
+    @Override
+    public void onReplaceOrder(BigDecimal price, long quantity, long orderId) {
+        throw createReadOnlyException();
+    }
+
+    @Override
+    public void onTrade(long quantity, long restingOrderId) {
+        throw createReadOnlyException();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private UnsupportedOperationException createReadOnlyException() {
+        return new UnsupportedOperationException("The client is read only, events must be sent to the book of the server");
+    }
+}
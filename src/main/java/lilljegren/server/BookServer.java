@@ -0,0 +1,355 @@
+package lilljegren.server;
+
+import lilljegren.Level2View;
+import lilljegren.LevelChangeListener;
+import lilljegren.scalable.Level2ViewScalable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+import static lilljegren.server.Protocol.*;
+
+/**
+ * <pre>
+ * Serves the queries of one book to other processes on the host over a loopback socket, see Protocol for the format
+ *
+ * Each client is served by its own task on the executor, blocking on its socket. On JDK 21+ pass
+ * Executors.newVirtualThreadPerTaskExecutor() to have one virtual thread per client, the default is a cached pool of daemon threads.
+ * close ends the tasks by closing the sockets, an executor passed in may be shared so only the default pool is shut down
+ *
+ * Every client has its own direct buffers that are reused for all responses, so answering a query only allocates for prices
+ *
+ * The book is not thread safe, so all events must be applied through update, queries hold the read lock and updates the write lock.
+ * Subscribers first get the current levels as a snapshot sized to the book, then the level changes copied into a buffer while the
+ * write lock is held and written to the socket by the subscriber's own task. A subscriber that falls more than a buffer behind on
+ * the changes is disconnected rather than holding up the book. So is a subscriber to a book with a price too long for the Protocol,
+ * the book never sees an exception from a subscriber
+ * </pre>
+ */
+public final class BookServer implements Closeable {
+
+    private static final int SUBSCRIPTION_BUFFER = 1 << 16;
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+    private final Level2ViewScalable book;
+    private final ExecutorService executor;
+    //Only an executor created by the server is shut down on close
+    private final boolean ownsExecutor;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private ServerSocketChannel serverChannel;
+    //Open connections, closed on close so the tasks end even on an executor that isn't shut down
+    private final Set<SocketChannel> clients = ConcurrentHashMap.newKeySet();
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * @param executor runs the tasks of the server, it is not shut down by close
+     */
+    public BookServer(Level2ViewScalable book, ExecutorService executor) {
+        this(book, executor, false);
+    }
+
+    public BookServer(Level2ViewScalable book) {
+        this(book, Executors.newCachedThreadPool(r -> {
+            var t = new Thread(r, "book-server");
+            t.setDaemon(true);
+            return t;
+        }), true);
+    }
+
+    private BookServer(Level2ViewScalable book, ExecutorService executor, boolean ownsExecutor) {
+        this.book = requireNonNull(book);
+        this.executor = requireNonNull(executor);
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Listen on the loopback interface
+     * @param port the port or 0 for any free port
+     * @return the address clients connect to
+     */
+    public InetSocketAddress start(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        executor.execute(this::accept);
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    /**
+     * Apply events to the book, subscribers are sent the resulting level changes
+     */
+    public void update(Consumer<? super Level2ViewScalable> events) {
+        lock.writeLock().lock();
+        try {
+            events.accept(book);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        for (var client : clients) {
+            closeQuietly(client);
+        }
+        for (var subscription : subscriptions) {
+            subscription.drop();
+        }
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void accept() {
+        long backoff = 0;
+        while (serverChannel.isOpen()) {
+            SocketChannel client;
+            try {
+                client = serverChannel.accept();
+                backoff = 0;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                //Failure to accept one client shouldn't stop the server, but a lasting one e.g. out of file descriptors mustn't spin
+                backoff = Math.min(MAX_ACCEPT_BACKOFF_MILLIS, Math.max(1, backoff * 2));
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+            try {
+                executor.execute(() -> serve(client));
+            } catch (RejectedExecutionException e) {
+                //The executor is shut down, so is the server
+                closeQuietly(client);
+                return;
+            }
+        }
+    }
+
+    private static void closeQuietly(SocketChannel client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            //Nothing more to do
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        var in = ByteBuffer.allocateDirect(1 + MAX_PRICE_BYTES);
+        var out = ByteBuffer.allocateDirect(FRAME_HEADER + 4 + MAX_LADDER * (MAX_PRICE_BYTES + 8));
+        var prices = new BigDecimal[MAX_LADDER];
+        var sizes = new long[MAX_LADDER];
+        clients.add(client);
+        try (client) {
+            //Checked after adding, so either close sees the client or the client sees close
+            if (closed) {
+                return;
+            }
+            client.socket().setTcpNoDelay(true);
+            while (true) {
+                in.clear().limit(1);
+                readFully(client, in);
+                var op = in.get(0);
+                switch (op) {
+                    case TOP: {
+                        var side = readSide(client, in);
+                        startFrame(out, TOP);
+                        BigDecimal top;
+                        lock.readLock().lock();
+                        try {
+                            top = book.getTopOfBook(side);
+                        } finally {
+                            lock.readLock().unlock();
+                        }
+                        out.put((byte) (top == null ? 0 : 1));
+                        checkPrice(putPrice(out, top == null ? BigDecimal.ZERO : top));
+                        break;
+                    }
+                    case SIZE: {
+                        //The side and the price header, then the unscaled value of the length in the header
+                        in.clear().limit(1 + PRICE_HEADER);
+                        readFully(client, in);
+                        in.limit(1 + PRICE_HEADER + Math.max(0, Math.min(in.get(PRICE_HEADER), MAX_UNSCALED_BYTES)));
+                        readFully(client, in);
+                        in.flip();
+                        var side = getSide(in);
+                        var price = getPrice(in);
+                        startFrame(out, SIZE);
+                        lock.readLock().lock();
+                        try {
+                            out.putLong(book.getSizeForPriceLevel(side, price));
+                        } finally {
+                            lock.readLock().unlock();
+                        }
+                        break;
+                    }
+                    case DEPTH: {
+                        var side = readSide(client, in);
+                        startFrame(out, DEPTH);
+                        lock.readLock().lock();
+                        try {
+                            out.putLong(book.getBookDepth(side));
+                        } finally {
+                            lock.readLock().unlock();
+                        }
+                        break;
+                    }
+                    case LADDER: {
+                        in.clear().limit(5);
+                        readFully(client, in);
+                        in.flip();
+                        var side = getSide(in);
+                        var maxLevels = Math.max(0, Math.min(in.getInt(), MAX_LADDER));
+                        int count;
+                        lock.readLock().lock();
+                        try {
+                            count = book.getLevels(side, maxLevels, prices, sizes);
+                        } finally {
+                            lock.readLock().unlock();
+                        }
+                        startFrame(out, LADDER);
+                        out.putInt(count);
+                        for (int i = 0; i < count; i++) {
+                            checkPrice(putPrice(out, prices[i]));
+                            out.putLong(sizes[i]);
+                            prices[i] = null;
+                        }
+                        break;
+                    }
+                    case SUBSCRIBE:
+                        new Subscription(client).run();
+                        return;
+                    default:
+                        return;//Unknown request, the client is out of sync so drop it
+                }
+                endFrame(out);
+                writeFully(client, out);
+            }
+        } catch (IOException e) {
+            //Client went away
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    private static void checkPrice(boolean sent) throws IOException {
+        if (!sent) {
+            //Can't be answered, the client is dropped
+            throw new IOException("Price too long for the protocol");
+        }
+    }
+
+    private static Level2View.Side readSide(SocketChannel client, ByteBuffer in) throws IOException {
+        in.clear().limit(1);
+        readFully(client, in);
+        in.flip();
+        return getSide(in);
+    }
+
+    /**
+     * Double buffered stream of level changes to one client, the book thread fills one buffer while the client task writes the other
+     */
+    private final class Subscription implements LevelChangeListener {
+        private final SocketChannel client;
+        private ByteBuffer pending = ByteBuffer.allocateDirect(SUBSCRIPTION_BUFFER);
+        private ByteBuffer sending = ByteBuffer.allocateDirect(SUBSCRIPTION_BUFFER);
+        //Set on overflow, on a delta that can't be sent or on close, the task then ends
+        private boolean dropped;
+        //The levels replayed when the listener is added, sized to the book rather than subject to the buffer limit
+        private ByteBuffer snapshot;
+        private boolean registering;
+
+        Subscription(SocketChannel client) {
+            this.client = client;
+        }
+
+        @Override
+        public synchronized void onLevelChange(Level2View.Side side, BigDecimal price, long delta, long newSize) {
+            //Never throws, a delta that can't be sent drops the subscriber
+            if (!putDelta(registering ? snapshot : pending, side, price, delta, newSize)) {
+                dropped = true;
+            }
+            if (!registering) {
+                notifyAll();
+            }
+        }
+
+        private synchronized void register(Level2ViewScalable book) {
+            var levels = book.getBookDepth(Level2View.Side.BID) + book.getBookDepth(Level2View.Side.ASK);
+            snapshot = ByteBuffer.allocate(Math.toIntExact(levels * MAX_DELTA_FRAME));
+            registering = true;
+            try {
+                book.addLevelChangeListener(this);
+            } finally {
+                registering = false;
+            }
+        }
+
+        synchronized void drop() {
+            dropped = true;
+            notifyAll();
+        }
+
+        void run() throws IOException {
+            subscriptions.add(this);
+            try {
+                //The write lock so the snapshot of the current levels and the following changes line up
+                update(this::register);
+                synchronized (this) {
+                    if (dropped || closed) {
+                        return;
+                    }
+                }
+                //Outside the lock, only the changes from now on count against the buffer
+                snapshot.flip();
+                writeFully(client, snapshot);
+                snapshot = null;
+                while (true) {
+                    synchronized (this) {
+                        while (pending.position() == 0 && !dropped) {
+                            wait();
+                        }
+                        if (dropped) {
+                            return;
+                        }
+                        var swap = pending;
+                        pending = sending;
+                        sending = swap;
+                    }
+                    sending.flip();
+                    writeFully(client, sending);
+                    sending.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                update(b -> b.removeLevelChangeListener(this));
+                subscriptions.remove(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package lilljegren.server;
+
+import lilljegren.LevelChangeListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static lilljegren.server.Protocol.*;
+
+/**
+ * <pre>
+ * Receives the level changes of a book served by a BookServer
+ *
+ * The listener is first sent the current levels, as with Level2ViewScalable.addLevelChangeListener, and then every change.
+ * Run it on a thread of its own, run returns when the subscriber is closed or the server drops the connection
+ * </pre>
+ */
+public class BookSubscriber implements Runnable, Closeable {
+
+    private final SocketChannel channel;
+    private final LevelChangeListener listener;
+    private final ByteBuffer in = ByteBuffer.allocateDirect(MAX_DELTA_FRAME);
+
+    public BookSubscriber(InetSocketAddress address, LevelChangeListener listener) throws IOException {
+        this.listener = requireNonNull(listener);
+        channel = SocketChannel.open(address);
+        var out = ByteBuffer.allocate(1).put(SUBSCRIBE).flip();
+        writeFully(channel, out);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (channel.isOpen()) {
+                var type = readFrame(channel, in);
+                if (type != DELTA) {
+                    throw new IOException(format("Expected delta but got %d", type));
+                }
+                var side = getSide(in);
+                var price = getPrice(in);
+                var delta = in.getLong();
+                listener.onLevelChange(side, price, delta, in.getLong());
+            }
+        } catch (IOException e) {
+            //Closed or dropped by the server
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * @return false once the connection is closed, either by close or by the server
+     */
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            //Nothing more to do
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package lilljegren.server;
+
+import lilljegren.Level2View;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <pre>
+ * Binary protocol between BookServer and its clients, all numbers big endian
+ *
+ * Requests are an opcode followed by the arguments
+ *   TOP        side
+ *   SIZE       side price
+ *   DEPTH      side
+ *   LADDER     side int:maxLevels
+ *   SUBSCRIBE
+ *
+ * Responses and deltas are framed as int:length followed by the opcode of the request and the payload
+ *   TOP        byte:present price
+ *   SIZE       long:size
+ *   DEPTH      long:depth
+ *   LADDER     int:count count*(price long:size)
+ *   DELTA      side price long:delta long:newSize
+ *
+ * A side is a byte with the ordinal, a price an int with the scale, a byte with the length of the unscaled value and the
+ * big endian two's complement bytes of the unscaled value. An unscaled value that fits a long is always sent as 8 bytes.
+ * Any BigDecimal can be sent up to MAX_UNSCALED_BYTES bytes of unscaled value, about 150 digits
+ * After SUBSCRIBE the server sends the current levels as DELTAs followed by every change, the client sends nothing more
+ * </pre>
+ */
+final class Protocol {
+
+    static final byte TOP = 1;
+    static final byte SIZE = 2;
+    static final byte DEPTH = 3;
+    static final byte LADDER = 4;
+    static final byte SUBSCRIBE = 5;
+    static final byte DELTA = 6;
+
+    static final int PRICE_HEADER = 5;
+    static final int MAX_UNSCALED_BYTES = 64;
+    static final int MAX_PRICE_BYTES = PRICE_HEADER + MAX_UNSCALED_BYTES;
+    static final int FRAME_HEADER = 5;
+    static final int MAX_DELTA_FRAME = FRAME_HEADER + 1 + MAX_PRICE_BYTES + 16;
+    static final int MAX_LADDER = 1024;
+
+    //values() clones the array on every call
+    private static final Level2View.Side[] SIDES = Level2View.Side.values();
+
+    private Protocol() {
+    }
+
+    /**
+     * The buffer must have room for MAX_PRICE_BYTES
+     * @return false, with nothing written, if the unscaled value is longer than MAX_UNSCALED_BYTES
+     */
+    static boolean putPrice(ByteBuffer buffer, BigDecimal price) {
+        var unscaled = price.unscaledValue();
+        if (unscaledBytes(unscaled) > MAX_UNSCALED_BYTES) {
+            return false;
+        }
+        putPrice(buffer, price.scale(), unscaled);
+        return true;
+    }
+
+    private static void putPrice(ByteBuffer buffer, int scale, BigInteger unscaled) {
+        buffer.putInt(scale);
+        if (unscaled.bitLength() < Long.SIZE) {
+            buffer.put((byte) Long.BYTES);
+            buffer.putLong(unscaled.longValue());
+        } else {
+            var bytes = unscaled.toByteArray();
+            buffer.put((byte) bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static int unscaledBytes(BigInteger unscaled) {
+        //Same length as toByteArray, which has room for the sign bit
+        return unscaled.bitLength() < Long.SIZE ? Long.BYTES : unscaled.bitLength() / 8 + 1;
+    }
+
+    static BigDecimal getPrice(ByteBuffer buffer) throws IOException {
+        var scale = buffer.getInt();
+        var length = buffer.get();
+        if (length == Long.BYTES) {
+            return BigDecimal.valueOf(buffer.getLong(), scale);
+        }
+        if (length < 1 || length > MAX_UNSCALED_BYTES) {
+            throw new IOException("Bad price length:" + length);
+        }
+        var bytes = new byte[length];
+        buffer.get(bytes);
+        return new BigDecimal(new BigInteger(bytes), scale);
+    }
+
+    static Level2View.Side getSide(ByteBuffer buffer) throws IOException {
+        var ordinal = buffer.get();
+        if (ordinal < 0 || ordinal >= SIDES.length) {
+            throw new IOException("Bad side:" + ordinal);
+        }
+        return SIDES[ordinal];
+    }
+
+    /**
+     * Start a frame, the length is filled in by endFrame
+     */
+    static void startFrame(ByteBuffer buffer, byte type) {
+        buffer.clear();
+        buffer.putInt(0);
+        buffer.put(type);
+    }
+
+    static void endFrame(ByteBuffer buffer) {
+        buffer.putInt(0, buffer.position() - 4);
+        buffer.flip();
+    }
+
+    /**
+     * @return false, with nothing written, if the delta doesn't fit the buffer or the price is too long to send
+     */
+    static boolean putDelta(ByteBuffer buffer, Level2View.Side side, BigDecimal price, long delta, long newSize) {
+        var unscaled = price.unscaledValue();
+        var unscaledBytes = unscaledBytes(unscaled);
+        var length = FRAME_HEADER + 1 + PRICE_HEADER + unscaledBytes + 16;
+        if (unscaledBytes > MAX_UNSCALED_BYTES || buffer.remaining() < length) {
+            return false;
+        }
+        var start = buffer.position();
+        buffer.putInt(length - 4);
+        buffer.put(DELTA);
+        buffer.put((byte) side.ordinal());
+        putPrice(buffer, price.scale(), unscaled);
+        buffer.putLong(delta);
+        buffer.putLong(newSize);
+        assert buffer.position() - start == length;
+        return true;
+    }
+
+    /**
+     * Read exactly the remaining bytes of the buffer
+     */
+    static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Read one frame into the buffer, positioned after the type
+     * @return the type of the frame
+     */
+    static byte readFrame(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear().limit(4);
+        readFully(channel, buffer);
+        var length = buffer.getInt(0);
+        if (length < 1 || length > buffer.capacity()) {
+            throw new IOException("Bad frame length:" + length);
+        }
+        buffer.clear().limit(length);
+        readFully(channel, buffer);
+        buffer.flip();
+        return buffer.get();
+    }
+}
@@ -0,0 +1,127 @@
+package lilljegren;
+
+import lilljegren.compact.Level2ViewCompact;
+import lilljegren.scalable.Level2ViewScalable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.math.BigDecimal;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Replays seeded streams through all implementations, the length and seed can be set with -Dfuzz.events and -Dfuzz.seed
+ */
+public class DifferentialFuzzTest {
+    static final long EVENTS = Long.getLong("fuzz.events", 200_000);
+    static final long SEED = Long.getLong("fuzz.seed", 20200601);
+
+    @Test
+    public void implementationsAgree(TestReporter reporter) {
+        var harness = new DifferentialHarness(SEED, EVENTS, 500, 100, 0, 1000)
+                .add("scalable", Level2ViewScalable::new)
+                .add("scalable-assert", () -> new Level2ViewScalable(Validation.ASSERT))
+                .add("scalable-trusted", () -> new Level2ViewScalable(Validation.TRUSTED))
+                .add("compact", Level2ViewCompact::new);
+        harness.assertEquivalent();
+        harness.measureThroughput().forEach((name, rate) -> reporter.publishEntry(name, String.format("%,.0f events/s", rate)));
+    }
+
+    @Test
+    public void strictImplementationsRejectTheSameEvents() {
+        new DifferentialHarness(SEED, EVENTS / 4, 500, 100, 5, 1000)
+                .add("scalable", () -> new Level2ViewScalable(Validation.STRICT))
+                .add("compact", () -> new Level2ViewCompact(Validation.STRICT))
+                .assertEquivalent();
+    }
+
+    @Test
+    public void streamIsReproducible() {
+        var first = new EventStream(42, 50, 20, 5);
+        var second = new EventStream(42, 50, 20, 5);
+        for (int i = 0; i < 10_000; i++) {
+            first.next();
+            second.next();
+            assertEquals(first.describe(), second.describe());
+        }
+    }
+
+    @Test
+    public void failureIsShrunk() {
+        //Trades one lot less on large trades
+        Supplier<Level2View> broken = () -> new Level2ViewScalable() {
+            @Override
+            public void onTrade(long quantity, long restingOrderId) {
+                super.onTrade(quantity < 900 ? quantity : quantity - 1, restingOrderId);
+            }
+        };
+        var failure = new DifferentialHarness(SEED, 100_000, 200, 50, 0, 100)
+                .add("scalable", Level2ViewScalable::new)
+                .add("broken", broken)
+                .run();
+        assertNotNull(failure);
+        assertEquals(SEED, failure.seed);
+        assertTrue(failure.shrunk);
+        assertEquals(2, failure.events.size(), failure::toString);
+        assertTrue(failure.events.get(0).startsWith("N#"));
+        assertTrue(failure.events.get(1).startsWith("T#"));
+
+        //The shrunk events reproduce the failure
+        var expected = new Level2ViewScalable();
+        var actual = broken.get();
+        failure.events.stream().map(Instruction::parse).forEach(i -> {
+            i.actOn(expected);
+            i.actOn(actual);
+        });
+        assertNotEquals(totalSize(expected), totalSize(actual));
+    }
+
+    @Test
+    public void longFailureIsReportedWithoutShrinking() {
+        var failure = new DifferentialHarness(SEED, 100_000, 200, 50, 0, 100)
+                .add("scalable", Level2ViewScalable::new)
+                .add("broken", () -> new Level2ViewScalable() {
+                    @Override
+                    public void onCancelOrder(long orderId) {
+                        //Ignores cancels once the stream is past the shrink limit
+                        if (orderId < 100) {
+                            super.onCancelOrder(orderId);
+                        }
+                    }
+                })
+                .maxShrink(100)
+                .run();
+        assertNotNull(failure);
+        assertTrue(failure.failedAt >= 100);
+        assertNull(failure.events);
+        assertTrue(failure.toString().contains("seed " + SEED), failure::toString);
+    }
+
+    @Test
+    public void shrinkingStopsWhenTheTimeRunsOut() {
+        var failure = new DifferentialHarness(SEED, 100_000, 200, 50, 0, 100)
+                .add("scalable", Level2ViewScalable::new)
+                .add("broken", () -> new Level2ViewScalable() {
+                    @Override
+                    public void onTrade(long quantity, long restingOrderId) {
+                        super.onTrade(quantity < 900 ? quantity : quantity - 1, restingOrderId);
+                    }
+                })
+                .shrinkMillis(0)
+                .run();
+        assertNotNull(failure);
+        assertFalse(failure.shrunk);
+        assertEquals(failure.failedAt + 1, failure.events.size());
+        assertTrue(failure.toString().contains("ran out of time"), failure::toString);
+    }
+
+    private static long totalSize(Level2View view) {
+        var total = 0L;
+        for (int i = 0; i < 50; i++) {
+            var price = BigDecimal.valueOf(100 + i, 2);
+            total += view.getSizeForPriceLevel(Level2View.Side.BID, price) + view.getSizeForPriceLevel(Level2View.Side.ASK, price);
+        }
+        return total;
+    }
+}
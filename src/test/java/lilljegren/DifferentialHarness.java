@@ -0,0 +1,344 @@
+package lilljegren;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+import static lilljegren.Level2View.Side.ASK;
+import static lilljegren.Level2View.Side.BID;
+
+/**
+ * <pre>
+ * Replays the same seeded EventStream through any number of Level2View implementations and checks they agree
+ *
+ * After every event all implementations must either accept it or all reject it, an event rejected by all is consistent.
+ * Every checkEvery events, and at the end, depth, top of book and the size of every price of the grid are compared
+ *
+ * On a divergence the stream is generated again up to the failing event and shrunk by removing chunks of events
+ * as long as the remaining events still diverge, the failure message has the seed and the shrunk events in Instruction format.
+ * Shrinking keeps the events in memory and replays a candidate per removed chunk, so a divergence after maxShrink events
+ * (-Dfuzz.maxShrink, 10,000 by default) is only reported with the seed and the index of the event, replay the seed to that event to investigate.
+ * Shrinking also stops after shrinkMillis (-Dfuzz.shrinkMillis, 60s by default), the events shrunk so far still diverge
+ *
+ * Run with -Dfuzz.events=300000000 -Dfuzz.seed=... for long runs, the stream uses constant memory
+ * </pre>
+ */
+class DifferentialHarness {
+
+    private static final int THROUGHPUT_BLOCK = 1 << 20;
+    private static final int MAX_SHRINK = Integer.getInteger("fuzz.maxShrink", 10_000);
+    private static final long SHRINK_MILLIS = Long.getLong("fuzz.shrinkMillis", 60_000);
+
+    private final long seed;
+    private final long events;
+    private final int maxLive;
+    private final int priceLevels;
+    private final int invalidPercent;
+    private final int checkEvery;
+    private int maxShrink = MAX_SHRINK;
+    private long shrinkMillis = SHRINK_MILLIS;
+    private final Map<String, Supplier<? extends Level2View>> implementations = new LinkedHashMap<>();
+
+    DifferentialHarness(long seed, long events, int maxLive, int priceLevels, int invalidPercent, int checkEvery) {
+        this.seed = seed;
+        this.events = events;
+        this.maxLive = maxLive;
+        this.priceLevels = priceLevels;
+        this.invalidPercent = invalidPercent;
+        this.checkEvery = checkEvery;
+    }
+
+    DifferentialHarness add(String name, Supplier<? extends Level2View> factory) {
+        implementations.put(name, Objects.requireNonNull(factory));
+        return this;
+    }
+
+    /**
+     * @param maxShrink max number of events for a failure to be shrunk
+     */
+    DifferentialHarness maxShrink(int maxShrink) {
+        this.maxShrink = maxShrink;
+        return this;
+    }
+
+    /**
+     * @param shrinkMillis time after which shrinking stops with the events shrunk so far
+     */
+    DifferentialHarness shrinkMillis(long shrinkMillis) {
+        this.shrinkMillis = shrinkMillis;
+        return this;
+    }
+
+    private EventStream newStream() {
+        return new EventStream(seed, maxLive, priceLevels, invalidPercent);
+    }
+
+    /**
+     * @return null if all implementations agree on the whole stream otherwise the shrunk failure
+     */
+    Failure run() {
+        var names = new ArrayList<>(implementations.keySet());
+        var views = createViews();
+        var stream = newStream();
+        var outcomes = new Throwable[views.length];
+        for (long i = 0; i < events; i++) {
+            stream.next();
+            var difference = apply(stream, views, outcomes, names);
+            if (difference == null && (i % checkEvery == 0 || i == events - 1)) {
+                difference = compare(stream, views, names);
+            }
+            if (difference != null) {
+                return shrink(i, difference);
+            }
+        }
+        return null;
+    }
+
+    void assertEquivalent() {
+        var failure = run();
+        if (failure != null) {
+            throw new AssertionError(failure.toString());
+        }
+    }
+
+    /**
+     * Replay the stream through each implementation on its own, the events are generated in blocks outside the timing
+     * @return events per second of each implementation
+     */
+    Map<String, Double> measureThroughput() {
+        var result = new LinkedHashMap<String, Double>();
+        for (var entry : implementations.entrySet()) {
+            var view = entry.getValue().get();
+            var log = new EventLog(newStream(), (int) Math.min(events, THROUGHPUT_BLOCK));
+            var nanos = 0L;
+            for (long done = 0; done < events; done += log.size()) {
+                log.fill((int) Math.min(events - done, log.capacity()));
+                var start = System.nanoTime();
+                for (int i = 0; i < log.size(); i++) {
+                    log.load(i);
+                    try {
+                        log.stream.applyTo(view);
+                    } catch (RuntimeException e) {
+                        //Rejected invalid event
+                    }
+                }
+                nanos += System.nanoTime() - start;
+            }
+            result.put(entry.getKey(), events * 1e9 / Math.max(1, nanos));
+        }
+        return result;
+    }
+
+    private Level2View[] createViews() {
+        return implementations.values().stream().map(Supplier::get).toArray(Level2View[]::new);
+    }
+
+    private static String apply(EventStream stream, Level2View[] views, Throwable[] outcomes, List<String> names) {
+        for (int v = 0; v < views.length; v++) {
+            try {
+                stream.applyTo(views[v]);
+                outcomes[v] = null;
+            } catch (RuntimeException | AssertionError e) {
+                outcomes[v] = e;
+            }
+        }
+        for (int v = 1; v < views.length; v++) {
+            if ((outcomes[0] == null) != (outcomes[v] == null)) {
+                return format("%s %s but %s %s", names.get(0), describe(outcomes[0]), names.get(v), describe(outcomes[v]));
+            }
+        }
+        return null;
+    }
+
+    private static String describe(Throwable outcome) {
+        return outcome == null ? "accepted" : "rejected with " + outcome;
+    }
+
+    private static String compare(EventStream stream, Level2View[] views, List<String> names) {
+        var expected = views[0];
+        for (int v = 1; v < views.length; v++) {
+            var actual = views[v];
+            for (var side : new Level2View.Side[]{BID, ASK}) {
+                if (expected.getBookDepth(side) != actual.getBookDepth(side)) {
+                    return format("%s depth %d but %s %d", names.get(0), expected.getBookDepth(side), names.get(v), actual.getBookDepth(side));
+                }
+                var expectedTop = expected.getTopOfBook(side);
+                var actualTop = actual.getTopOfBook(side);
+                if (expectedTop == null ? actualTop != null : actualTop == null || expectedTop.compareTo(actualTop) != 0) {
+                    return format("%s top of %s %s but %s %s", names.get(0), side, expectedTop, names.get(v), actualTop);
+                }
+                for (int p = 0; p < stream.getPriceLevels(); p++) {
+                    var price = stream.getPrice(p);
+                    var expectedSize = expected.getSizeForPriceLevel(side, price);
+                    var actualSize = actual.getSizeForPriceLevel(side, price);
+                    if (expectedSize != actualSize) {
+                        return format("%s size of %s %s %d but %s %d", names.get(0), side, price, expectedSize, names.get(v), actualSize);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private Failure shrink(long failedAt, String difference) {
+        if (failedAt >= maxShrink) {
+            return new Failure(seed, failedAt, difference, null, false);
+        }
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shrinkMillis);
+        var log = new EventLog(newStream(), (int) failedAt + 1);
+        log.fill(log.capacity());
+        var names = new ArrayList<>(implementations.keySet());
+        var current = new int[log.size()];
+        Arrays.setAll(current, i -> i);
+
+        var chunk = Math.max(1, current.length / 2);
+        var complete = false;
+        while (!complete) {
+            var removed = false;
+            var start = 0;
+            while (start < current.length) {
+                if (System.nanoTime() - deadline >= 0) {
+                    return failure(failedAt, log, current, names, false);
+                }
+                var candidate = without(current, start, Math.min(current.length, start + chunk));
+                if (candidate.length > 0 && replay(log, candidate, names) != null) {
+                    current = candidate;
+                    removed = true;
+                } else {
+                    start += chunk;
+                }
+            }
+            complete = chunk == 1 && !removed;
+            if (!removed) {
+                chunk = Math.max(1, chunk / 2);
+            }
+        }
+        return failure(failedAt, log, current, names, true);
+    }
+
+    private Failure failure(long failedAt, EventLog log, int[] indices, List<String> names, boolean shrunk) {
+        var events = new ArrayList<String>(indices.length);
+        for (var index : indices) {
+            events.add(log.describe(index));
+        }
+        return new Failure(seed, failedAt, replay(log, indices, names), events, shrunk);
+    }
+
+    private static int[] without(int[] indices, int from, int to) {
+        var result = new int[indices.length - (to - from)];
+        System.arraycopy(indices, 0, result, 0, from);
+        System.arraycopy(indices, to, result, from, indices.length - to);
+        return result;
+    }
+
+    /**
+     * Replay the selected events through new implementations, the outcome of each event is compared
+     * and the state every checkEvery events and after the last event
+     * @return the first difference or null if they agree
+     */
+    private String replay(EventLog log, int[] indices, List<String> names) {
+        var views = createViews();
+        var outcomes = new Throwable[views.length];
+        for (int i = 0; i < indices.length; i++) {
+            log.load(indices[i]);
+            var difference = apply(log.stream, views, outcomes, names);
+            if (difference == null && (i % checkEvery == 0 || i == indices.length - 1)) {
+                difference = compare(log.stream, views, names);
+            }
+            if (difference != null) {
+                return difference;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A block of events of a stream kept in primitive arrays, loaded back into the stream one at a time for replay
+     */
+    private static final class EventLog {
+        private static final Level2View.Side[] SIDES = Level2View.Side.values();
+        private final EventStream stream;
+        private final byte[] types;
+        private final byte[] sides;
+        private final int[] priceIndices;
+        private final long[] quantities;
+        private final long[] orderIds;
+        private int size;
+
+        EventLog(EventStream stream, int capacity) {
+            this.stream = stream;
+            types = new byte[capacity];
+            sides = new byte[capacity];
+            priceIndices = new int[capacity];
+            quantities = new long[capacity];
+            orderIds = new long[capacity];
+        }
+
+        /**
+         * Replace the events with the next events of the stream
+         */
+        void fill(int count) {
+            size = count;
+            for (int i = 0; i < count; i++) {
+                stream.next();
+                types[i] = stream.type;
+                sides[i] = (byte) stream.side.ordinal();
+                priceIndices[i] = stream.priceIndex;
+                quantities[i] = stream.quantity;
+                orderIds[i] = stream.orderId;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        int capacity() {
+            return types.length;
+        }
+
+        void load(int index) {
+            stream.type = types[index];
+            stream.side = SIDES[sides[index]];
+            stream.priceIndex = priceIndices[index];
+            stream.quantity = quantities[index];
+            stream.orderId = orderIds[index];
+        }
+
+        String describe(int index) {
+            load(index);
+            return stream.describe();
+        }
+    }
+
+    static final class Failure {
+        final long seed;
+        final long failedAt;
+        final String difference;
+        final List<String> events;//Null if the stream was too long to shrink
+        final boolean shrunk;//False if the time ran out before no more events could be removed
+
+        Failure(long seed, long failedAt, String difference, List<String> events, boolean shrunk) {
+            this.seed = seed;
+            this.failedAt = failedAt;
+            this.difference = difference;
+            this.events = events;
+            this.shrunk = shrunk;
+        }
+
+        @Override
+        public String toString() {
+            var text = format("Implementations diverge at event %d of seed %d: %s", failedAt, seed, difference);
+            if (events == null) {
+                return text + "\nToo long to shrink, replay the seed to the event";
+            }
+            return text + (shrunk ? "\nShrunk to " : "\nShrinking ran out of time at ") + events.size() + " events:\n" + String.join("\n", events);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package lilljegren;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static java.lang.String.format;
+
+/**
+ * <pre>
+ * Seeded and reproducible stream of order events, the same seed always gives the same events
+ *
+ * Events are generated one at a time into the fields of the stream, so arbitrarily long streams use constant memory.
+ * The stream keeps track of the live orders, so cancels, replaces and trades refer to existing orders and a trade never
+ * exceeds the remaining quantity. A given percentage of events can be made invalid ( unknown or duplicate ids, bad price or quantity )
+ * to check that implementations reject the same events
+ *
+ * Prices are taken from a fixed grid so queries can check every level, bids and asks overlap in the middle of the grid
+ * </pre>
+ */
+class EventStream {
+
+    static final byte NEW = 0;
+    static final byte CANCEL = 1;
+    static final byte REPLACE = 2;
+    static final byte TRADE = 3;
+
+    private static final Level2View.Side[] SIDES = Level2View.Side.values();
+
+    //The current event
+    byte type;
+    Level2View.Side side;
+    int priceIndex;
+    long quantity;
+    long orderId;
+
+    private final SplittableRandom random;
+    private final int maxLive;
+    private final int invalidPercent;
+    private final BigDecimal[] prices;
+
+    private long[] liveIds = new long[16];
+    private byte[] liveSides = new byte[16];
+    private long[] liveQuantities = new long[16];
+    private int liveCount;
+    private long nextId;
+
+    /**
+     * @param seed seed of the stream
+     * @param maxLive max number of live orders, keeps the book size bounded for any stream length
+     * @param priceLevels size of the price grid, index -1 is a negative price used for invalid events
+     * @param invalidPercent percentage of invalid events
+     */
+    EventStream(long seed, int maxLive, int priceLevels, int invalidPercent) {
+        this.random = new SplittableRandom(seed);
+        this.maxLive = maxLive;
+        this.invalidPercent = invalidPercent;
+        this.prices = new BigDecimal[priceLevels + 1];
+        prices[0] = BigDecimal.valueOf(-1, 2);
+        for (int i = 1; i < prices.length; i++) {
+            prices[i] = BigDecimal.valueOf(100 + i - 1, 2);
+        }
+    }
+
+    int getPriceLevels() {
+        return prices.length - 1;
+    }
+
+    BigDecimal getPrice(int priceIndex) {
+        return prices[priceIndex + 1];
+    }
+
+    void next() {
+        if (invalidPercent > 0 && random.nextInt(100) < invalidPercent) {
+            nextInvalid();
+            return;
+        }
+        if (liveCount == 0 || (liveCount < maxLive && random.nextInt(100) < 40)) {
+            type = NEW;
+            side = SIDES[random.nextInt(2)];
+            priceIndex = randomPrice(side);
+            quantity = random.nextInt(1000) + 1;
+            orderId = nextId++;
+            addLive(orderId, side, quantity);
+            return;
+        }
+        var live = random.nextInt(liveCount);
+        orderId = liveIds[live];
+        side = SIDES[liveSides[live]];
+        switch (random.nextInt(3)) {
+            case 0:
+                type = CANCEL;
+                removeLive(live);
+                break;
+            case 1:
+                type = REPLACE;
+                priceIndex = randomPrice(side);
+                quantity = random.nextInt(1000) + 1;
+                liveQuantities[live] = quantity;
+                break;
+            default:
+                type = TRADE;
+                quantity = random.nextLong(liveQuantities[live]) + 1;
+                liveQuantities[live] -= quantity;
+                if (liveQuantities[live] == 0) {
+                    removeLive(live);
+                }
+        }
+    }
+
+    private void nextInvalid() {
+        side = SIDES[random.nextInt(2)];
+        priceIndex = randomPrice(side);
+        quantity = random.nextInt(1000) + 1;
+        var unknownId = nextId + 1_000_000_000L;
+        switch (random.nextInt(6)) {
+            case 0:
+                type = NEW;
+                orderId = liveCount == 0 ? unknownId : liveIds[random.nextInt(liveCount)];//Duplicate
+                if (liveCount == 0) {
+                    quantity = 0;
+                }
+                break;
+            case 1:
+                type = NEW;
+                orderId = unknownId;
+                quantity = -quantity;
+                break;
+            case 2:
+                type = NEW;
+                orderId = unknownId;
+                priceIndex = -1;
+                break;
+            case 3:
+                type = CANCEL;
+                orderId = unknownId;
+                break;
+            case 4:
+                type = REPLACE;
+                orderId = liveCount == 0 ? unknownId : liveIds[random.nextInt(liveCount)];
+                quantity = 0;
+                break;
+            default:
+                type = TRADE;
+                orderId = unknownId;
+        }
+    }
+
+    private int randomPrice(Level2View.Side side) {
+        var levels = getPriceLevels();
+        var band = levels * 6 / 10;
+        return side == Level2View.Side.BID ? random.nextInt(band) : levels - band + random.nextInt(band);
+    }
+
+    private void addLive(long id, Level2View.Side side, long quantity) {
+        if (liveCount == liveIds.length) {
+            liveIds = Arrays.copyOf(liveIds, liveCount * 2);
+            liveSides = Arrays.copyOf(liveSides, liveCount * 2);
+            liveQuantities = Arrays.copyOf(liveQuantities, liveCount * 2);
+        }
+        liveIds[liveCount] = id;
+        liveSides[liveCount] = (byte) side.ordinal();
+        liveQuantities[liveCount] = quantity;
+        liveCount++;
+    }
+
+    private void removeLive(int live) {
+        liveCount--;
+        liveIds[live] = liveIds[liveCount];
+        liveSides[live] = liveSides[liveCount];
+        liveQuantities[live] = liveQuantities[liveCount];
+    }
+
+    void applyTo(Level2View view) {
+        switch (type) {
+            case NEW:
+                view.onNewOrder(side, getPrice(priceIndex), quantity, orderId);
+                break;
+            case CANCEL:
+                view.onCancelOrder(orderId);
+                break;
+            case REPLACE:
+                view.onReplaceOrder(getPrice(priceIndex), quantity, orderId);
+                break;
+            default:
+                view.onTrade(quantity, orderId);
+        }
+    }
+
+    /**
+     * @return the current event in the format of Instruction, so a failing case can be pasted into a test
+     */
+    String describe() {
+        switch (type) {
+            case NEW:
+                return format("N#%s:%s:%d:%d", side == Level2View.Side.ASK ? "A" : "B", getPrice(priceIndex), quantity, orderId);
+            case CANCEL:
+                return format("C#%d", orderId);
+            case REPLACE:
+                return format("R#%s:%d:%d", getPrice(priceIndex), quantity, orderId);
+            default:
+                return format("T#%d:%d", quantity, orderId);
+        }
+    }
+}
@@ -21,7 +21,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
  * As we have two implementation we can create random operations on the OrderBook and just compare that both implementations return the same
  */
 public class RandomReplayTest {
-    static Random R = new Random();//To make test deterministic we can add a seed here
+    static Random R = new Random(Long.getLong("replay.seed", 20200601));//Seeded so a failure can be reproduced
 
 
     @Test
@@ -2,10 +2,20 @@ package lilljegren.compact;
 
 import lilljegren.AbstractLevel2ViewTester;
 import lilljegren.Level2View;
+import lilljegren.Validation;
+import org.junit.jupiter.api.Nested;
 
 public class Level2ViewCompactTest extends AbstractLevel2ViewTester {
     @Override
     public Level2View createUnderTest() {
         return new Level2ViewCompact();
     }
+
+    @Nested
+    class StrictValidation extends AbstractLevel2ViewTester {
+        @Override
+        protected Level2View createUnderTest() {
+            return new Level2ViewCompact(Validation.STRICT);
+        }
+    }
 }
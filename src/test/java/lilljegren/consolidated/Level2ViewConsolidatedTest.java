@@ -0,0 +1,97 @@
+package lilljegren.consolidated;
+
+import lilljegren.scalable.Level2ViewScalable;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static lilljegren.Level2View.Side.ASK;
+import static lilljegren.Level2View.Side.BID;
+import static org.junit.jupiter.api.Assertions.*;
+
+class Level2ViewConsolidatedTest {
+
+    @Test
+    public void consolidatesVenues(){
+        var venue1 = new Level2ViewScalable();
+        var venue2 = new Level2ViewScalable();
+        var underTest = new Level2ViewConsolidated(venue1, venue2);
+        assertNull(underTest.getTopOfBook(BID));
+        assertEquals(0, underTest.getBookDepth(ASK));
+
+        venue1.onNewOrder(BID, new BigDecimal("1.00"), 1000, 1);
+        venue2.onNewOrder(BID, new BigDecimal("1.000"), 500, 1);//Same id on another venue is fine
+        venue2.onNewOrder(BID, new BigDecimal("1.05"), 200, 2);
+        venue1.onNewOrder(ASK, new BigDecimal("2.00"), 300, 3);
+
+        assertEquals(1500, underTest.getSizeForPriceLevel(BID, BigDecimal.ONE));
+        assertEquals(2, underTest.getBookDepth(BID));
+        assertEquals(0, new BigDecimal("1.05").compareTo(underTest.getTopOfBook(BID)));
+        assertEquals(0, new BigDecimal("2").compareTo(underTest.getTopOfBook(ASK)));
+
+        venue2.onTrade(200, 2);
+        assertEquals(0, BigDecimal.ONE.compareTo(underTest.getTopOfBook(BID)));
+        assertEquals(1, underTest.getBookDepth(BID));
+
+        venue1.onReplaceOrder(new BigDecimal("1.01"), 700, 1);
+        assertEquals(500, underTest.getSizeForPriceLevel(BID, BigDecimal.ONE));
+        assertEquals(700, underTest.getSizeForPriceLevel(BID, new BigDecimal("1.01")));
+
+        venue1.onCancelOrder(1);
+        venue2.onCancelOrder(1);
+        assertEquals(0, underTest.getBookDepth(BID));
+        assertNull(underTest.getTopOfBook(BID));
+    }
+
+    @Test
+    public void venueAddedAfterOrdersAreIncluded(){
+        var venue = new Level2ViewScalable();
+        venue.onNewOrder(ASK, new BigDecimal("2.00"), 300, 3);
+        var underTest = new Level2ViewConsolidated();
+        underTest.addVenue(venue);
+        assertEquals(300, underTest.getSizeForPriceLevel(ASK, new BigDecimal("2")));
+    }
+
+    @Test
+    public void readOnly(){
+        var underTest = new Level2ViewConsolidated();
+        assertThrows(UnsupportedOperationException.class, () -> underTest.onNewOrder(BID, BigDecimal.ONE, 100, 1));
+        assertThrows(UnsupportedOperationException.class, () -> underTest.onCancelOrder(1));
+    }
+
+    /**
+     * A single book receiving the orders of all venues ( with unique ids ) must look the same as the consolidated view
+     */
+    @Test
+    public void sameAsSingleBook(){
+        var r = new Random(42);
+        int noOfVenues = 4;
+        var venues = new Level2ViewScalable[noOfVenues];
+        for (int i = 0; i < noOfVenues; i++) {
+            venues[i] = new Level2ViewScalable();
+        }
+        var underTest = new Level2ViewConsolidated(venues);
+        var reference = new Level2ViewScalable();
+
+        for (int id = 0; id < 2000; id++) {
+            var venue = venues[id % noOfVenues];
+            var side = r.nextBoolean() ? BID : ASK;
+            var price = BigDecimal.valueOf(r.nextInt(20) + (side == ASK ? 20 : 0));
+            var qty = r.nextInt(100) + 1;
+            venue.onNewOrder(side, price, qty, id);
+            reference.onNewOrder(side, price, qty, id);
+            if (id > 10 && r.nextBoolean()) {
+                int toCancel = id - 10;
+                venues[toCancel % noOfVenues].onCancelOrder(toCancel);
+                reference.onCancelOrder(toCancel);
+                assertEquals(reference.getTopOfBook(BID), underTest.getTopOfBook(BID));
+                assertEquals(reference.getTopOfBook(ASK), underTest.getTopOfBook(ASK));
+                assertEquals(reference.getBookDepth(BID), underTest.getBookDepth(BID));
+                assertEquals(reference.getBookDepth(ASK), underTest.getBookDepth(ASK));
+                assertEquals(reference.getSizeForPriceLevel(BID, price), underTest.getSizeForPriceLevel(BID, price));
+                assertEquals(reference.getSizeForPriceLevel(ASK, price), underTest.getSizeForPriceLevel(ASK, price));
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package lilljegren.feed;
+
+import lilljegren.scalable.Level2ViewScalable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static lilljegren.Level2View.Side.ASK;
+import static lilljegren.Level2View.Side.BID;
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstructionParserTest {
+
+    @Test
+    public void allInstructions(){
+        var underTest = new InstructionParser(2);
+        var book = new Level2ViewScalable();
+        underTest.parse("N#B:1.00:1000:10", book);
+        underTest.parse("New#B:1.05:2000:12", book);
+        underTest.parse("N#A:2:3000:11", book);
+        underTest.parse("N#A:2.000:4000:13", book);
+        assertEquals(1000, book.getSizeForPriceLevel(BID, BigDecimal.ONE));
+        assertEquals(7000, book.getSizeForPriceLevel(ASK, new BigDecimal("2")));
+        assertEquals(new BigDecimal("1.05"), book.getTopOfBook(BID));
+        assertEquals(new BigDecimal("2.00"), book.getTopOfBook(ASK));
+
+        underTest.parse("R#1.05:600:10", book);
+        underTest.parse("Replace#1.05:500:12", book);
+        assertEquals(1100, book.getSizeForPriceLevel(BID, new BigDecimal("1.05")));
+
+        underTest.parse("T#1000:11", book);
+        underTest.parse("Trade#1000:13", book);
+        assertEquals(5000, book.getSizeForPriceLevel(ASK, new BigDecimal("2")));
+
+        underTest.parse("C#10", book);
+        underTest.parse("Cancel#12", book);
+        assertEquals(0, book.getBookDepth(BID));
+    }
+
+    @Test
+    public void byteRange(){
+        var underTest = new InstructionParser(4);
+        var book = new Level2ViewScalable();
+        var bytes = "xxN#B:0.0125:1000:7yy".getBytes(StandardCharsets.US_ASCII);
+        underTest.parse(bytes, 2, bytes.length - 2, book);
+        assertEquals(new BigDecimal("0.0125"), book.getTopOfBook(BID));
+    }
+
+    @Test
+    public void negativeValuesReachTheBook(){
+        var underTest = new InstructionParser(2);
+        var book = new Level2ViewScalable();
+        var pt = assertThrows(IllegalArgumentException.class, () -> underTest.parse("N#A:-1.00:1000:14", book));
+        assertEquals("Price must be greater or equal to 0, was:-1.00", pt.getMessage());
+        var qt = assertThrows(IllegalArgumentException.class, () -> underTest.parse("N#A:1.00:-1000:14", book));
+        assertEquals("Quantity must be greater than 0, was:-1000", qt.getMessage());
+    }
+
+    @Test
+    public void fullRangeOfLongs(){
+        var underTest = new InstructionParser(2);
+        var book = new Level2ViewScalable();
+        underTest.parse("N#B:1.00:100:1000000000000000000", book);
+        underTest.parse("N#B:1.00:200:9223372036854775807", book);
+        underTest.parse("N#B:1.00:300:-9223372036854775808", book);
+        assertEquals(600, book.getSizeForPriceLevel(BID, BigDecimal.ONE));
+        underTest.parse("C#1000000000000000000", book);
+        underTest.parse("C#9223372036854775807", book);
+        underTest.parse("C#-9223372036854775808", book);
+        assertEquals(0, book.getBookDepth(BID));
+    }
+
+    @Test
+    public void badInput(){
+        var underTest = new InstructionParser(2);
+        var book = new Level2ViewScalable();
+        assertThrows(IllegalArgumentException.class, () -> underTest.parse("", book));
+        assertThrows(IllegalArgumentException.class, () -> underTest.parse("X#10", book));
+        assertThrows(IllegalArgumentException.class, () -> underTest.parse("Cxl#10", book));
+        assertThrows(IllegalArgumentException.class, () -> underTest.parse("C10", book));
+        assertThrows(IllegalArgumentException.class, () -> underTest.parse("C#", book));
+        assertThrows(IllegalArgumentException.class, () -> underTest.parse("C#10:11", book));
+        assertThrows(IllegalArgumentException.class, () -> underTest.parse("N#X:1.00:1000:10", book));
+        assertThrows(IllegalArgumentException.class, () -> underTest.parse("N#B:1.001:1000:10", book));
+        assertThrows(IllegalArgumentException.class, () -> underTest.parse("N#B:1.0.0:1000:10", book));
+        assertThrows(IllegalArgumentException.class, () -> underTest.parse("N#B:1.00:1000", book));
+        assertThrows(IllegalArgumentException.class, () -> underTest.parse("T#1x0:10", book));
+        assertThrows(IllegalArgumentException.class, () -> underTest.parse("T#9223372036854775808:10", book));
+        assertThrows(IllegalArgumentException.class, () -> underTest.parse("C#10000000000000000000", book));
+        assertThrows(IllegalArgumentException.class, () -> underTest.parse("N#B:99999999999999999.00:1000:10", book));
+        assertEquals(0, book.getBookDepth(BID));
+    }
+
+    @Test
+    public void readFile(@TempDir Path dir) throws IOException {
+        var file = dir.resolve("capture.txt");
+        var content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append("N#B:1.").append(i % 10).append("0:100:").append(i).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        content.append("\n");
+        for (int i = 0; i < 1000; i += 2) {
+            content.append("C#").append(i).append('\n');
+        }
+        content.append("T#50:1");//No line break at the end
+        Files.writeString(file, content);
+
+        //Small buffer so lines are split between reads
+        var underTest = new InstructionFileReader(new InstructionParser(2), 7);
+        var book = new Level2ViewScalable();
+        assertEquals(1501, underTest.read(file, book));
+        assertEquals(5, book.getBookDepth(BID));
+        assertEquals(100 * 100 - 50, book.getSizeForPriceLevel(BID, new BigDecimal("1.1")));
+    }
+
+    @Test
+    public void errorReportsLine() {
+        var underTest = new InstructionFileReader(new InstructionParser(2));
+        var in = new ByteArrayInputStream("N#B:1.00:100:1\nC#2\n".getBytes(StandardCharsets.US_ASCII));
+        var e = assertThrows(IllegalArgumentException.class, () -> underTest.read(in, new Level2ViewScalable()));
+        assertEquals("Error on line 2", e.getMessage());
+    }
+}
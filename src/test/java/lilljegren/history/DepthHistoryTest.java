@@ -0,0 +1,159 @@
+package lilljegren.history;
+
+import lilljegren.Level2View;
+import lilljegren.scalable.Level2ViewScalable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static lilljegren.Level2View.Side.ASK;
+import static lilljegren.Level2View.Side.BID;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DepthHistoryTest {
+
+    @Test
+    public void bookAsOfAndSizeOverInterval(@TempDir Path dir) throws IOException {
+        var time = new AtomicLong();
+        var book = new Level2ViewScalable();
+        try (var writer = new DepthHistoryWriter(dir, 2, 100, 1 << 16, time::get)) {
+            book.addLevelChangeListener(writer);
+            time.set(10);
+            book.onNewOrder(BID, new BigDecimal("1.00"), 500, 1);
+            time.set(20);
+            book.onNewOrder(BID, new BigDecimal("1.0"), 300, 2);
+            time.set(150);//Next bucket
+            book.onNewOrder(ASK, new BigDecimal("1.10"), 100, 3);
+            time.set(160);
+            book.onCancelOrder(1);
+            time.set(320);
+            book.onCancelOrder(2);
+        }
+        var underTest = new DepthHistoryReader(dir);
+        assertEquals(3, underTest.getBucketCount());
+
+        assertEquals(0, underTest.bookAsOf(5).getBookDepth(BID));
+        assertEquals(500, underTest.bookAsOf(15).getSizeForPriceLevel(BID, BigDecimal.ONE));
+        assertEquals(800, underTest.bookAsOf(149).getSizeForPriceLevel(BID, BigDecimal.ONE));
+        var at150 = underTest.bookAsOf(150);
+        assertEquals(800, at150.getSizeForPriceLevel(BID, BigDecimal.ONE));
+        assertEquals(new BigDecimal("1.10"), at150.getTopOfBook(ASK));
+        assertEquals(300, underTest.getSizeAsOf(200, BID, BigDecimal.ONE));
+        assertEquals(0, underTest.getSizeAsOf(1000, BID, BigDecimal.ONE));
+
+        var changes = new ArrayList<long[]>();
+        underTest.forEachSize(BID, BigDecimal.ONE, 15, 400, (t, size) -> changes.add(new long[]{t, size}));
+        assertArrayEquals(new long[]{15, 500}, changes.get(0));
+        assertArrayEquals(new long[]{20, 800}, changes.get(1));
+        assertArrayEquals(new long[]{160, 300}, changes.get(2));
+        assertArrayEquals(new long[]{320, 0}, changes.get(3));
+        assertEquals(4, changes.size());
+    }
+
+    @Test
+    public void pricesOffTheGrid(@TempDir Path dir) throws IOException {
+        var empty = new DepthHistoryReader(dir);
+        assertEquals(0, empty.getSizeAsOf(10, BID, new BigDecimal("1.05")));
+        var changes = new ArrayList<long[]>();
+        empty.forEachSize(BID, new BigDecimal("1.05"), 0, 100, (t, size) -> changes.add(new long[]{t, size}));
+        assertEquals(1, changes.size());
+        assertArrayEquals(new long[]{0, 0}, changes.get(0));
+
+        try (var writer = new DepthHistoryWriter(dir, 1, 100, 1 << 16, () -> 10)) {
+            writer.record(10, BID, 10, 500);
+        }
+        var underTest = new DepthHistoryReader(dir);
+        assertEquals(500, underTest.getSizeAsOf(20, BID, new BigDecimal("1.000")));
+        assertEquals(0, underTest.getSizeAsOf(20, BID, new BigDecimal("1.05")));
+        assertEquals(0, underTest.getSizeAsOf(20, BID, new BigDecimal("1E+30")));
+        changes.clear();
+        underTest.forEachSize(BID, new BigDecimal("1.05"), 0, 100, (t, size) -> changes.add(new long[]{t, size}));
+        assertEquals(1, changes.size());
+    }
+
+    @Test
+    public void failureDoesNotReachTheBook(@TempDir Path dir) throws IOException {
+        var book = new Level2ViewScalable();
+        //Room for a single record per bucket and no price decimals
+        var writer = new DepthHistoryWriter(dir, 0, 100, BucketFormat.MAX_VARINT, () -> 10);
+        book.addLevelChangeListener(writer);
+        book.onNewOrder(BID, BigDecimal.ONE, 500, 1);
+        assertNull(writer.getFailure());
+        //Removing from 1 and adding at 2 at the same time doesn't fit a bucket
+        book.onReplaceOrder(BigDecimal.TEN, 300, 1);
+        assertTrue(writer.getFailure() instanceof IllegalStateException);
+        assertEquals(300, book.getSizeForPriceLevel(BID, BigDecimal.TEN));
+        assertEquals(0, book.getSizeForPriceLevel(BID, BigDecimal.ONE));
+        assertEquals(0, book.checkConsistency().size());
+
+        assertThrows(IOException.class, () -> writer.record(20, BID, 1, 100));
+        assertThrows(IOException.class, writer::close);
+    }
+
+    @Test
+    public void badPriceDoesNotReachTheBook(@TempDir Path dir) throws IOException {
+        var book = new Level2ViewScalable();
+        var writer = new DepthHistoryWriter(dir, 0, 100, 1 << 10, () -> 10);
+        book.addLevelChangeListener(writer);
+        book.onNewOrder(ASK, new BigDecimal("1.5"), 500, 1);
+        assertTrue(writer.getFailure() instanceof ArithmeticException);
+        assertEquals(500, book.getSizeForPriceLevel(ASK, new BigDecimal("1.5")));
+        assertThrows(IOException.class, writer::close);
+    }
+
+    /**
+     * Every state the book passed through must be recovered, with a small column capacity so buckets are also split early
+     */
+    @Test
+    public void replayMatchesBook(@TempDir Path dir) throws IOException {
+        var r = new Random(11);
+        var time = new AtomicLong();
+        var book = new Level2ViewScalable();
+        //Several events can have the same time, only the last state at a time can be recovered
+        var expected = new TreeMap<Long, long[]>();
+        var live = new ArrayList<Long>();
+        try (var writer = new DepthHistoryWriter(dir, 0, 250, 256, time::get)) {
+            book.addLevelChangeListener(writer);
+            for (long id = 0; id < 2000; id++) {
+                time.addAndGet(r.nextInt(5));
+                if (live.size() > 30 || (!live.isEmpty() && r.nextBoolean())) {
+                    var resting = live.remove(r.nextInt(live.size()));
+                    if (r.nextBoolean()) {
+                        book.onCancelOrder(resting);
+                    } else {
+                        book.onReplaceOrder(BigDecimal.valueOf(r.nextInt(10)), r.nextInt(100) + 1, resting);
+                        live.add(resting);
+                    }
+                } else {
+                    book.onNewOrder(r.nextBoolean() ? BID : ASK, BigDecimal.valueOf(r.nextInt(10)), r.nextInt(100) + 1, id);
+                    live.add(id);
+                }
+                expected.put(time.get(), stateOf(time.get(), book));
+            }
+        }
+        var underTest = new DepthHistoryReader(dir);
+        assertTrue(underTest.getBucketCount() > 2400 / 250);
+        for (var state : expected.values()) {
+            assertArrayEquals(state, stateOf(state[0], underTest.bookAsOf(state[0])), "At time " + state[0]);
+        }
+    }
+
+    private static long[] stateOf(long time, Level2View book) {
+        var state = new long[23];
+        state[0] = time;
+        state[1] = book.getBookDepth(BID);
+        state[2] = book.getBookDepth(ASK);
+        for (int px = 0; px < 10; px++) {
+            state[3 + px] = book.getSizeForPriceLevel(BID, BigDecimal.valueOf(px));
+            state[13 + px] = book.getSizeForPriceLevel(ASK, BigDecimal.valueOf(px));
+        }
+        return state;
+    }
+}
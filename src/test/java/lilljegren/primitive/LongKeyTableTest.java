@@ -0,0 +1,78 @@
+package lilljegren.primitive;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongKeyTableTest {
+
+    @Test
+    public void putFindRemove(){
+        var underTest = new LongKeyTable(4);
+        assertEquals(-1, underTest.find(10));
+
+        underTest.put(10, 3, 500);
+        underTest.put(0, 1, 0);//0 and negative keys are valid
+        underTest.put(Long.MIN_VALUE, 2, -1);
+        var slot = underTest.find(10);
+        assertEquals(3, underTest.getTag(slot));
+        assertEquals(500, underTest.getValue(slot));
+        underTest.setValue(slot, 400);
+        assertEquals(400, underTest.getValue(underTest.find(10)));
+        assertEquals(-1, underTest.getValue(underTest.find(Long.MIN_VALUE)));
+
+        assertEquals(underTest.find(0), underTest.put(0, 5, 7));//Overwrite
+        assertEquals(5, underTest.getTag(underTest.find(0)));
+        assertEquals(3, underTest.size());
+
+        assertTrue(underTest.remove(10));
+        assertFalse(underTest.remove(10));
+        assertEquals(2, underTest.size());
+        long[] sum = {0};
+        underTest.forEach((key, tag, value) -> sum[0] += tag);
+        assertEquals(7, sum[0]);
+
+        assertThrows(IllegalArgumentException.class, () -> underTest.put(1, 0, 100));
+    }
+
+    @Test
+    public void capacityLimits(){
+        assertThrows(IllegalArgumentException.class, () -> new LongKeyTable(LongKeyTable.MAX_KEYS + 1));
+        assertThrows(IllegalArgumentException.class, () -> new LongKeyTable(-1));
+        assertThrows(IllegalArgumentException.class, () -> new LongKeyTable(4, 12));
+        assertThrows(IllegalArgumentException.class, () -> new LongKeyTable(4, 1 << 31));
+
+        var underTest = new LongKeyTable(4, 16);
+        for (int key = 0; key < 8; key++) {
+            underTest.put(key, 1, key);
+        }
+        assertThrows(IllegalStateException.class, () -> underTest.put(8, 1, 8));
+        assertEquals(8, underTest.size());
+        assertEquals(16, underTest.capacity());
+        assertEquals(-1, underTest.find(8));
+    }
+
+    @Test
+    public void sameAsHashMap(){
+        var r = new Random(11);
+        var underTest = new LongKeyTable(16);
+        var reference = new HashMap<Long, Long>();
+        for (int i = 0; i < 200_000; i++) {
+            long key = r.nextInt(5000) - 2500;
+            if (r.nextInt(3) == 0) {
+                assertEquals(reference.remove(key) != null, underTest.remove(key));
+            } else {
+                long value = r.nextLong();
+                underTest.put(key, 1, value);
+                reference.put(key, value);
+            }
+            long probe = r.nextInt(5000) - 2500;
+            var slot = underTest.find(probe);
+            assertEquals(reference.get(probe), slot < 0 ? null : underTest.getValue(slot));
+        }
+        assertEquals(reference.size(), underTest.size());
+    }
+}
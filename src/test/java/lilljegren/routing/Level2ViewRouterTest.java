@@ -0,0 +1,75 @@
+package lilljegren.routing;
+
+import lilljegren.scalable.Level2ViewScalable;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static lilljegren.Level2View.Side.ASK;
+import static lilljegren.Level2View.Side.BID;
+import static org.junit.jupiter.api.Assertions.*;
+
+class Level2ViewRouterTest {
+
+    @Test
+    public void dispatchOnOrderId(){
+        var underTest = new Level2ViewRouter(100);
+        var abc = underTest.addBook("ABC", new Level2ViewScalable());
+        var xyz = underTest.addBook("XYZ", new Level2ViewScalable());
+        assertEquals(xyz, underTest.getBookIndex("XYZ"));
+        assertThrows(IllegalArgumentException.class, () -> underTest.addBook("ABC", new Level2ViewScalable()));
+
+        underTest.onNewOrder(abc, BID, BigDecimal.ONE, 1000, 1);
+        underTest.onNewOrder(xyz, ASK, BigDecimal.TEN, 500, 2);
+        assertEquals(ASK, underTest.getSide(2));
+
+        underTest.onReplaceOrder(BigDecimal.ONE, 800, 1);
+        underTest.onTrade(100, 2);
+        assertEquals(800, underTest.getBook("ABC").getSizeForPriceLevel(BID, BigDecimal.ONE));
+        assertEquals(400, underTest.getBook("XYZ").getSizeForPriceLevel(ASK, BigDecimal.TEN));
+        assertEquals(0, underTest.getBook("XYZ").getBookDepth(BID));
+
+        underTest.onCancelOrder(1);
+        assertEquals(0, underTest.getBook(abc).getBookDepth(BID));
+        assertEquals(1, underTest.getRoutedCount());
+        assertThrows(IllegalArgumentException.class, () -> underTest.onCancelOrder(1));
+    }
+
+    @Test
+    public void rejectedOrderIsNotRouted(){
+        var underTest = new Level2ViewRouter(100);
+        var abc = underTest.addBook("ABC", new Level2ViewScalable());
+        assertThrows(IllegalArgumentException.class, () -> underTest.onNewOrder(abc, BID, BigDecimal.ONE, -5, 1));
+        assertEquals(0, underTest.getRoutedCount());
+    }
+
+    @Test
+    public void fullyTradedOrderIsUnrouted(){
+        var underTest = new Level2ViewRouter(100);
+        var abc = underTest.addBook("ABC", new Level2ViewScalable());
+        underTest.onNewOrder(abc, BID, BigDecimal.ONE, 1000, 1);
+        underTest.onNewOrder(abc, BID, BigDecimal.ONE, 1000, 2);
+        underTest.onTrade(400, 1);
+        assertEquals(2, underTest.getRoutedCount());
+        underTest.onReplaceOrder(BigDecimal.ONE, 300, 1);
+        underTest.onTrade(300, 1);
+        assertEquals(1, underTest.getRoutedCount());
+        assertNull(underTest.getSide(1));
+        assertThrows(IllegalArgumentException.class, () -> underTest.onTrade(1, 1));
+
+        //The id can be reused
+        underTest.onNewOrder(abc, BID, BigDecimal.ONE, 1000, 1);
+        assertEquals(2000, underTest.getBook(abc).getSizeForPriceLevel(BID, BigDecimal.ONE));
+    }
+
+    @Test
+    public void endOfSession(){
+        var underTest = new Level2ViewRouter(100);
+        var abc = underTest.addBook("ABC", new Level2ViewScalable());
+        underTest.onNewOrder(abc, BID, BigDecimal.ONE, 1000, 1);
+        underTest.onTrade(400, 1);
+        assertEquals(1, underTest.getRoutedCount());
+        underTest.endOfSession();
+        assertEquals(0, underTest.getRoutedCount());
+    }
+}
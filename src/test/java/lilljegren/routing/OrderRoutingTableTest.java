@@ -0,0 +1,111 @@
+package lilljegren.routing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static lilljegren.Level2View.Side.ASK;
+import static lilljegren.Level2View.Side.BID;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderRoutingTableTest {
+
+    @Test
+    public void putGetRemove(){
+        var underTest = new OrderRoutingTable(4);
+        assertEquals(OrderRoutingTable.NO_BOOK, underTest.getBook(10));
+        assertNull(underTest.getSide(10));
+
+        underTest.put(10, 3, ASK, 100);
+        underTest.put(0, 0, BID, 100);//0 and negative ids are valid
+        underTest.put(-5, OrderRoutingTable.MAX_BOOK, BID, 100);
+        assertEquals(3, underTest.getBook(10));
+        assertEquals(ASK, underTest.getSide(10));
+        assertEquals(0, underTest.getBook(0));
+        assertEquals(BID, underTest.getSide(0));
+        assertEquals(OrderRoutingTable.MAX_BOOK, underTest.getBook(-5));
+
+        underTest.put(10, 4, BID, 100);//Overwrite
+        assertEquals(4, underTest.getBook(10));
+        assertEquals(BID, underTest.getSide(10));
+        assertEquals(3, underTest.size());
+
+        assertEquals(4, underTest.remove(10));
+        assertEquals(OrderRoutingTable.NO_BOOK, underTest.remove(10));
+        assertEquals(2, underTest.size());
+
+        assertThrows(IllegalArgumentException.class, () -> underTest.put(1, -1, BID, 100));
+    }
+
+    @Test
+    public void clearKeepsCapacity(){
+        var underTest = new OrderRoutingTable(4);
+        for (int id = 0; id < 1000; id++) {
+            underTest.put(id, id % 7, BID, 100);
+        }
+        var capacity = underTest.capacity();
+        underTest.clear();
+        assertEquals(0, underTest.size());
+        assertEquals(capacity, underTest.capacity());
+        assertEquals(OrderRoutingTable.NO_BOOK, underTest.getBook(500));
+    }
+
+    @Test
+    public void tradeRemovesFilledRoute(){
+        var underTest = new OrderRoutingTable(4);
+        underTest.put(10, 3, ASK, 500);
+        assertEquals(500, underTest.getQuantity(10));
+        assertEquals(300, underTest.trade(10, 200));
+        assertEquals(300, underTest.getQuantity(10));
+        assertTrue(underTest.setQuantity(10, 250));
+        assertFalse(underTest.setQuantity(11, 250));
+        assertEquals(0, underTest.trade(10, 250));
+        assertEquals(OrderRoutingTable.NO_BOOK, underTest.getBook(10));
+        assertEquals(0, underTest.size());
+        assertEquals(0, underTest.trade(10, 1));
+    }
+
+    @Test
+    public void capacityLimits(){
+        assertThrows(IllegalArgumentException.class, () -> new OrderRoutingTable(600_000_000));
+        assertThrows(IllegalArgumentException.class, () -> new OrderRoutingTable(1_100_000_000));
+        assertThrows(IllegalArgumentException.class, () -> new OrderRoutingTable(-1));
+
+        var underTest = new OrderRoutingTable(4, 16);
+        for (int id = 0; id < 8; id++) {
+            underTest.put(id, 1, BID, 100);
+        }
+        assertEquals(16, underTest.capacity());
+        assertThrows(IllegalStateException.class, () -> underTest.put(8, 1, BID, 100));
+        assertEquals(8, underTest.size());
+        assertEquals(OrderRoutingTable.NO_BOOK, underTest.getBook(8));
+        //Known ids can still be overwritten and removed
+        underTest.put(3, 2, ASK, 100);
+        assertEquals(2, underTest.getBook(3));
+        underTest.remove(3);
+        underTest.put(8, 1, BID, 100);
+        assertEquals(1, underTest.getBook(8));
+    }
+
+    @Test
+    public void sameAsHashMap(){
+        var r = new Random(7);
+        var underTest = new OrderRoutingTable(16);
+        var reference = new HashMap<Long, Integer>();
+        for (int i = 0; i < 200_000; i++) {
+            long id = r.nextInt(5000);
+            if (r.nextInt(3) == 0) {
+                assertEquals(reference.getOrDefault(id, OrderRoutingTable.NO_BOOK), underTest.remove(id));
+                reference.remove(id);
+            } else {
+                var book = r.nextInt(100);
+                underTest.put(id, book, book % 2 == 0 ? BID : ASK, 100);
+                reference.put(id, book);
+            }
+            long probe = r.nextInt(5000);
+            assertEquals(reference.getOrDefault(probe, OrderRoutingTable.NO_BOOK), underTest.getBook(probe));
+        }
+        assertEquals(reference.size(), underTest.size());
+    }
+}
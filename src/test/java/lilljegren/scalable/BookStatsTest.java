@@ -0,0 +1,83 @@
+package lilljegren.scalable;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static lilljegren.Level2View.Side.ASK;
+import static lilljegren.Level2View.Side.BID;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookStatsTest {
+
+    @Test
+    public void topOfBookStats(){
+        var book = new Level2ViewScalable();
+        var stats = book.enableStats(() -> 0);
+        assertNull(stats.getMid());
+        assertTrue(Double.isNaN(stats.getImbalance()));
+
+        book.onNewOrder(BID, new BigDecimal("1.00"), 300, 1);
+        assertEquals(0, new BigDecimal("1").compareTo(stats.getBestBid()));
+        assertNull(stats.getSpread());
+
+        book.onNewOrder(ASK, new BigDecimal("1.10"), 100, 2);
+        assertEquals(0, new BigDecimal("1.05").compareTo(stats.getMid()));
+        assertEquals(0, new BigDecimal("0.10").compareTo(stats.getSpread()));
+        assertEquals(0.5, stats.getImbalance(), 1e-9);
+        //Larger bid size pushes the micro price towards the ask
+        assertEquals((1.00 * 100 + 1.10 * 300) / 400, stats.getMicroPrice(), 1e-9);
+
+        book.onTrade(200, 1);
+        assertEquals(100, stats.getTopSize(BID));
+        assertEquals(0.0, stats.getImbalance(), 1e-9);
+
+        book.onNewOrder(BID, new BigDecimal("1.05"), 50, 3);
+        assertEquals(0, new BigDecimal("1.05").compareTo(stats.getBestBid()));
+        assertEquals(50, stats.getTopSize(BID));
+
+        book.onCancelOrder(2);
+        assertNull(stats.getBestAsk());
+        assertNull(stats.getMid());
+        assertTrue(Double.isNaN(stats.getMicroPrice()));
+    }
+
+    @Test
+    public void onlyNotifiedWhenTopChanges(){
+        var book = new Level2ViewScalable();
+        var stats = book.enableStats(() -> 0);
+        var notifications = new AtomicInteger();
+        stats.setListener(s -> notifications.incrementAndGet());
+
+        book.onNewOrder(BID, new BigDecimal("1.00"), 300, 1);
+        assertEquals(1, notifications.get());
+        book.onNewOrder(BID, new BigDecimal("0.90"), 300, 2);//Not at the top
+        assertEquals(1, notifications.get());
+        book.onNewOrder(BID, new BigDecimal("1.00"), 300, 3);//Size at the top
+        assertEquals(2, notifications.get());
+        book.onCancelOrder(2);
+        assertEquals(2, notifications.get());
+    }
+
+    @Test
+    public void timeWeightedDepth(){
+        var time = new AtomicLong();
+        var book = new Level2ViewScalable();
+        var stats = book.enableStats(time::get);
+
+        time.set(10);
+        book.onNewOrder(BID, new BigDecimal("1.00"), 300, 1);//0 levels for 10
+        time.set(20);
+        book.onNewOrder(BID, new BigDecimal("0.90"), 300, 2);//1 level for 10
+        time.set(40);//2 levels for 20
+        assertEquals((0 * 10 + 1 * 10 + 2 * 20) / 40.0, stats.getTimeWeightedDepth(BID), 1e-9);
+        assertEquals(0, stats.getTimeWeightedDepth(ASK), 1e-9);
+
+        stats.resetTimeWeighting();
+        assertEquals(2, stats.getTimeWeightedDepth(BID), 1e-9);
+        time.set(50);
+        assertEquals(2, stats.getTimeWeightedDepth(BID), 1e-9);
+    }
+}
@@ -2,10 +2,247 @@ package lilljegren.scalable;
 
 import lilljegren.AbstractLevel2ViewTester;
 import lilljegren.Level2View;
+import lilljegren.Validation;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static lilljegren.Level2View.Side.ASK;
+import static lilljegren.Level2View.Side.BID;
+import static org.junit.jupiter.api.Assertions.*;
 
 class Level2ViewScalableTest extends AbstractLevel2ViewTester {
     @Override
     public Level2View createUnderTest() {
         return new Level2ViewScalable();
     }
+
+    @Test
+    public void consistency(){
+        var underTest = new Level2ViewScalable();
+        assertEquals(0, underTest.checkConsistency().size());
+        underTest.onNewOrder(BID, new BigDecimal("1.00"), 1000, 10);
+        underTest.onNewOrder(BID, new BigDecimal("1.000"), 500, 11);
+        underTest.onNewOrder(ASK, new BigDecimal("2.00"), 1000, 12);
+        underTest.onReplaceOrder(new BigDecimal("2.05"), 600, 12);
+        underTest.onTrade(100, 10);
+        assertEquals(0, underTest.checkConsistency().size());
+
+        //Corrupt the book by bypassing the page
+        underTest.getPage(BID).addOrder(new Order(BID, BigDecimal.ONE, 100, 42));
+        var violations = underTest.checkConsistency();
+        assertTrue(violations.size() >= 2, violations.toString());
+    }
+
+    @Test
+    public void trustedValidation(){
+        var underTest = new Level2ViewScalable(Validation.TRUSTED);
+        underTest.onNewOrder(BID, new BigDecimal("1.00"), 1000, 10);
+        underTest.onNewOrder(ASK, new BigDecimal("2.00"), 1000, 11);
+        underTest.onTrade(400, 10);
+        underTest.onCancelOrder(11);
+        assertEquals(600, underTest.getSizeForPriceLevel(BID, BigDecimal.ONE));
+        assertEquals(0, underTest.getBookDepth(ASK));
+        assertEquals(0, underTest.checkConsistency().size());
+    }
+
+    @Test
+    public void strictErrorsLeaveBookUnchanged(){
+        var underTest = new Level2ViewScalable(Validation.STRICT);
+        underTest.onNewOrder(BID, new BigDecimal("1.00"), 1000, 10);
+        assertThrows(IllegalArgumentException.class, () -> underTest.onNewOrder(ASK, new BigDecimal("2.00"), 1000, 10));
+        assertThrows(IllegalArgumentException.class, () -> underTest.onReplaceOrder(new BigDecimal("-2.00"), 1000, 10));
+        assertThrows(IllegalArgumentException.class, () -> underTest.onCancelOrder(11));
+        assertEquals(1000, underTest.getSizeForPriceLevel(BID, BigDecimal.ONE));
+        assertEquals(0, underTest.getBookDepth(ASK));
+        assertEquals(0, underTest.checkConsistency().size());
+    }
+
+    @Test
+    public void assertErrorsLeaveBookUnchanged(){
+        var underTest = new Level2ViewScalable(Validation.ASSERT);
+        underTest.onNewOrder(BID, new BigDecimal("1.00"), 1000, 10);
+        assertThrows(AssertionError.class, () -> underTest.onNewOrder(ASK, new BigDecimal("2.00"), 500, 10));
+        assertEquals(1000, underTest.getSizeForPriceLevel(BID, BigDecimal.ONE));
+        assertEquals(0, underTest.getBookDepth(ASK));
+        assertEquals(0, underTest.checkConsistency().size());
+        underTest.onCancelOrder(10);
+        assertEquals(0, underTest.getBookDepth(BID));
+    }
+
+    @Test
+    public void listenerFailureLeavesBookConsistent(){
+        var underTest = new Level2ViewScalable();
+        var stats = underTest.enableStats(() -> 0);
+        var sizes = new long[1];
+        underTest.addLevelChangeListener((side, price, delta, newSize) -> {
+            if (delta < 0) {
+                throw new IllegalStateException("Listener failed");
+            }
+        });
+        underTest.addLevelChangeListener((side, price, delta, newSize) -> sizes[0] += delta);
+        underTest.onNewOrder(BID, BigDecimal.ONE, 100, 1);
+
+        var e = assertThrows(IllegalStateException.class, () -> underTest.onReplaceOrder(BigDecimal.TEN, 50, 1));
+        assertEquals("Listener failed", e.getMessage());
+        assertEquals(0, underTest.checkConsistency().size(), () -> underTest.checkConsistency().toString());
+        assertEquals(0, underTest.getSizeForPriceLevel(BID, BigDecimal.ONE));
+        assertEquals(50, underTest.getSizeForPriceLevel(BID, BigDecimal.TEN));
+        assertEquals(0, BigDecimal.TEN.compareTo(stats.getBestBid()));
+        //The other listener saw both deltas
+        assertEquals(50, sizes[0]);
+
+        //Each event reports its own failure only
+        underTest.onNewOrder(BID, BigDecimal.ONE, 100, 2);
+        assertThrows(IllegalStateException.class, () -> underTest.onTrade(100, 1));
+        assertEquals(0, underTest.checkConsistency().size());
+        assertEquals(1, underTest.getBookDepth(BID));
+    }
+
+    @Test
+    public void memoryFootprint(){
+        var underTest = new Level2ViewScalable();
+        var empty = underTest.getMemoryFootprint();
+        assertEquals(0, empty.getOrders());
+        assertEquals(0, empty.getLevels());
+        assertEquals(0, empty.getOrderBytes());
+        assertTrue(empty.getIndexBytes() > 0);
+
+        for (int i = 0; i < 1000; i++) {
+            underTest.onNewOrder(i % 2 == 0 ? BID : ASK, BigDecimal.valueOf(i % 20), 100, i);
+        }
+        var full = underTest.getMemoryFootprint();
+        assertEquals(1000, full.getOrders());
+        assertEquals(20, full.getLevels());
+        assertEquals(MemoryFootprint.ORDER + MemoryFootprint.INDEX_ENTRY, full.getBytesPerOrder());
+        assertEquals(full.getOrderBytes() + full.getLevelBytes() + full.getIndexBytes(), full.getTotalBytes());
+        assertEquals(MemoryFootprint.estimate(1000, 20), full.getTotalBytes());
+
+        //The index table doesn't shrink when the orders are cancelled
+        for (int i = 0; i < 1000; i++) {
+            underTest.onCancelOrder(i);
+        }
+        var cancelled = underTest.getMemoryFootprint();
+        assertEquals(0, cancelled.getLevelBytes());
+        assertEquals(full.getIndexBytes(), cancelled.getIndexBytes());
+    }
+
+    @Test
+    public void maxOrders(){
+        var underTest = new Level2ViewScalable(Validation.TRUSTED, 2, 3);
+        assertEquals(MemoryFootprint.INDEX + MemoryFootprint.table(2), underTest.getMemoryFootprint().getIndexBytes());
+        for (int i = 0; i < 3; i++) {
+            underTest.onNewOrder(BID, BigDecimal.ONE, 100, i);
+        }
+        assertThrows(IllegalStateException.class, () -> underTest.onNewOrder(BID, BigDecimal.TEN, 100, 3));
+        assertEquals(1, underTest.getBookDepth(BID));
+        assertEquals(0, underTest.checkConsistency().size());
+
+        //Room again once an order is gone
+        underTest.onTrade(100, 0);
+        underTest.onNewOrder(BID, BigDecimal.TEN, 100, 3);
+        assertEquals(2, underTest.getBookDepth(BID));
+
+        assertThrows(IllegalArgumentException.class, () -> new Level2ViewScalable(Validation.STRICT, 10, 5));
+        assertThrows(IllegalArgumentException.class, () -> new Level2ViewScalable(Validation.STRICT, MemoryFootprint.MAX_PRESIZED + 1, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void estimateBeyondLargestTable(){
+        assertEquals(MemoryFootprint.MAX_TABLE, MemoryFootprint.tableCapacity(1_000_000_000L));
+        assertEquals(MemoryFootprint.MAX_TABLE, MemoryFootprint.tableCapacity(Long.MAX_VALUE));
+        assertEquals(MemoryFootprint.MAX_TABLE, MemoryFootprint.tableCapacity(MemoryFootprint.MAX_PRESIZED));
+        assertEquals(MemoryFootprint.MAX_TABLE / 2, MemoryFootprint.tableCapacity(MemoryFootprint.MAX_PRESIZED / 2));
+        var estimate = MemoryFootprint.estimate(1_000_000_000L, 10);
+        assertEquals(1_000_000_000L * (MemoryFootprint.ORDER + MemoryFootprint.INDEX_ENTRY), estimate
+                - 10L * (MemoryFootprint.LEVEL + MemoryFootprint.TREE_ENTRY + MemoryFootprint.PRICE)
+                - MemoryFootprint.INDEX - MemoryFootprint.ARRAY_HEADER - (long) MemoryFootprint.MAX_TABLE * MemoryFootprint.REFERENCE);
+    }
+
+    @Test
+    public void simulateInPriceTimePriority(){
+        var underTest = new Level2ViewScalable();
+        underTest.onNewOrder(ASK, new BigDecimal("2.01"), 100, 1);
+        underTest.onNewOrder(ASK, new BigDecimal("2.00"), 200, 2);
+        underTest.onNewOrder(ASK, new BigDecimal("2.00"), 300, 3);
+        underTest.onNewOrder(ASK, new BigDecimal("2.02"), 400, 4);
+        underTest.onNewOrder(BID, new BigDecimal("1.99"), 500, 5);
+
+        var fills = new Fills(10);
+        assertEquals(550, underTest.simulate(BID, 550, null, fills));
+        assertEquals(3, fills.getCount());
+        assertEquals(2, fills.getOrderId(0));
+        assertEquals(200, fills.getQuantity(0));
+        assertEquals(3, fills.getOrderId(1));
+        assertEquals(300, fills.getQuantity(1));
+        assertEquals(1, fills.getOrderId(2));
+        assertEquals(50, fills.getQuantity(2));
+        assertEquals(new BigDecimal("2.01"), fills.getPrice(2));
+        assertFalse(fills.isTruncated());
+        //Nothing changed
+        assertEquals(500, underTest.getSizeForPriceLevel(ASK, new BigDecimal("2.00")));
+
+        //The limit stops the walk
+        assertEquals(500, underTest.simulate(BID, 1000, new BigDecimal("2.00"), fills));
+        assertEquals(2, fills.getCount());
+        assertEquals(0, underTest.simulate(ASK, 100, new BigDecimal("2.00"), fills));
+        assertEquals(0, fills.getCount());
+        assertEquals(500, underTest.simulate(ASK, 1000, null, fills));
+
+        //More orders than room for fills
+        var small = new Fills(1);
+        assertEquals(200, underTest.simulate(BID, 1000, null, small));
+        assertTrue(small.isTruncated());
+        assertThrows(IndexOutOfBoundsException.class, () -> small.getOrderId(1));
+    }
+
+    @Test
+    public void partialTradeKeepsTimePriority(){
+        var underTest = new Level2ViewScalable();
+        underTest.onNewOrder(ASK, BigDecimal.TEN, 200, 1);
+        underTest.onNewOrder(ASK, BigDecimal.TEN, 300, 2);
+        underTest.onTrade(50, 1);
+        underTest.onReplaceOrder(BigDecimal.TEN, 100, 1);
+
+        var fills = new Fills(10);
+        underTest.simulate(BID, 1000, null, fills);
+        assertEquals(1, fills.getOrderId(0));
+        assertEquals(100, fills.getQuantity(0));
+
+        //Increasing the quantity goes to the back of the queue
+        underTest.onReplaceOrder(BigDecimal.TEN, 150, 1);
+        underTest.simulate(BID, 1000, null, fills);
+        assertEquals(2, fills.getOrderId(0));
+        assertEquals(1, fills.getOrderId(1));
+        assertEquals(0, underTest.checkConsistency().size());
+    }
+
+    @Test
+    public void applyFills(){
+        var underTest = new Level2ViewScalable();
+        var stats = underTest.enableStats(() -> 0);
+        underTest.onNewOrder(ASK, BigDecimal.TEN, 200, 1);
+        underTest.onNewOrder(ASK, BigDecimal.TEN, 300, 2);
+        underTest.onNewOrder(ASK, new BigDecimal("11"), 300, 3);
+        underTest.onNewOrder(BID, BigDecimal.ONE, 300, 4);
+
+        var fills = new Fills(10);
+        assertEquals(600, underTest.simulate(BID, 600, null, fills));
+        underTest.applyFills(fills);
+        assertEquals(0, underTest.getSizeForPriceLevel(ASK, BigDecimal.TEN));
+        assertEquals(200, underTest.getSizeForPriceLevel(ASK, new BigDecimal("11")));
+        assertEquals(1, underTest.getBookDepth(ASK));
+        assertEquals(0, new BigDecimal("11").compareTo(stats.getBestAsk()));
+        assertEquals(200, stats.getTopSize(ASK));
+        assertEquals(0, underTest.checkConsistency().size());
+    }
+
+    @Nested
+    class AssertValidation extends AbstractLevel2ViewTester {
+        @Override
+        protected Level2View createUnderTest() {
+            return new Level2ViewScalable(Validation.ASSERT);
+        }
+    }
 }
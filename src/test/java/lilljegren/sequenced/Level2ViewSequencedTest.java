@@ -0,0 +1,155 @@
+package lilljegren.sequenced;
+
+import lilljegren.consolidated.Level2ViewConsolidated;
+import lilljegren.scalable.Level2ViewScalable;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static lilljegren.Level2View.Side.ASK;
+import static lilljegren.Level2View.Side.BID;
+import static org.junit.jupiter.api.Assertions.*;
+
+class Level2ViewSequencedTest {
+
+    @Test
+    public void inSequence(){
+        var underTest = new Level2ViewSequenced(new Level2ViewScalable(), Level2ViewScalable::clear);
+        underTest.onNewOrder(1, BID, BigDecimal.ONE, 1000, 10);
+        underTest.onNewOrder(2, ASK, BigDecimal.TEN, 500, 11);
+        underTest.onTrade(3, 100, 10);
+        underTest.onNewOrder(2, ASK, BigDecimal.TEN, 500, 11);//Duplicate is ignored
+        assertFalse(underTest.isStale());
+        assertEquals(3, underTest.getLastSequence());
+        assertEquals(900, underTest.getView().getSizeForPriceLevel(BID, BigDecimal.ONE));
+        assertEquals(500, underTest.getView().getSizeForPriceLevel(ASK, BigDecimal.TEN));
+    }
+
+    @Test
+    public void gapFilledByRetransmission(){
+        var underTest = new Level2ViewSequenced(new Level2ViewScalable(), Level2ViewScalable::clear);
+        underTest.onNewOrder(1, BID, BigDecimal.ONE, 1000, 10);
+        //2 is lost
+        underTest.onReplaceOrder(3, BigDecimal.ONE, 300, 11);
+        underTest.onCancelOrder(4, 10);
+        assertTrue(underTest.isStale());
+        assertEquals(1, underTest.getLastSequence());
+        assertEquals(2, underTest.getBufferedCount());
+        assertEquals(1000, underTest.getView().getSizeForPriceLevel(BID, BigDecimal.ONE));
+
+        underTest.onNewOrder(2, BID, BigDecimal.ONE, 500, 11);
+        assertFalse(underTest.isStale());
+        assertEquals(4, underTest.getLastSequence());
+        assertEquals(300, underTest.getView().getSizeForPriceLevel(BID, BigDecimal.ONE));
+    }
+
+    @Test
+    public void resynchroniseFromSnapshot(){
+        var underTest = new Level2ViewSequenced(new Level2ViewScalable(), Level2ViewScalable::clear);
+        underTest.onNewOrder(1, BID, BigDecimal.ONE, 1000, 10);
+        //2 and 3 are lost
+        underTest.onNewOrder(4, ASK, BigDecimal.TEN, 200, 12);
+        underTest.onTrade(5, 50, 12);
+        assertTrue(underTest.isStale());
+
+        //Snapshot up to and including 4
+        underTest.resynchronise(4, book -> {
+            book.onNewOrder(BID, BigDecimal.ONE, 1000, 10);
+            book.onNewOrder(BID, new BigDecimal("1.5"), 700, 11);
+            book.onNewOrder(ASK, BigDecimal.TEN, 200, 12);
+        });
+        assertFalse(underTest.isStale());
+        assertEquals(5, underTest.getLastSequence());
+        assertEquals(0, underTest.getBufferedCount());
+        assertEquals(150, underTest.getView().getSizeForPriceLevel(ASK, BigDecimal.TEN));
+        assertEquals(0, new BigDecimal("1.5").compareTo(underTest.getView().getTopOfBook(BID)));
+
+        underTest.onCancelOrder(6, 11);
+        assertEquals(1, underTest.getView().getBookDepth(BID));
+    }
+
+    @Test
+    public void rejectedEventNeedsSnapshot(){
+        var underTest = new Level2ViewSequenced(new Level2ViewScalable(), Level2ViewScalable::clear);
+        underTest.onNewOrder(1, BID, BigDecimal.ONE, 1000, 10);
+        assertThrows(IllegalStateException.class, () -> underTest.onCancelOrder(2, 42));
+        assertTrue(underTest.isStale());
+        underTest.onCancelOrder(3, 10);
+        assertTrue(underTest.isStale());
+        assertEquals(1, underTest.getView().getBookDepth(BID));
+
+        underTest.resynchronise(2, book -> book.onNewOrder(BID, BigDecimal.ONE, 1000, 10));
+        assertFalse(underTest.isStale());
+        assertEquals(0, underTest.getView().getBookDepth(BID));
+    }
+
+    @Test
+    public void bufferOverflowNeedsSnapshot(){
+        var underTest = new Level2ViewSequenced(new Level2ViewScalable(), Level2ViewScalable::clear, 0, 2);
+        underTest.onNewOrder(2, BID, BigDecimal.ONE, 100, 2);
+        underTest.onNewOrder(3, BID, BigDecimal.ONE, 100, 3);
+        underTest.onNewOrder(4, BID, BigDecimal.ONE, 100, 4);
+        assertEquals(2, underTest.getBufferedCount());
+        underTest.onNewOrder(1, BID, BigDecimal.ONE, 100, 1);
+        assertTrue(underTest.isStale());
+
+        underTest.resynchronise(3, book -> {
+            for (int id = 1; id <= 3; id++) {
+                book.onNewOrder(BID, BigDecimal.ONE, 100, id);
+            }
+        });
+        assertFalse(underTest.isStale());
+        assertEquals(400, underTest.getView().getSizeForPriceLevel(BID, BigDecimal.ONE));
+    }
+
+    @Test
+    public void viewIsReadOnly(){
+        var underTest = new Level2ViewSequenced(new Level2ViewScalable(), Level2ViewScalable::clear);
+        assertThrows(UnsupportedOperationException.class, () -> underTest.getView().onCancelOrder(10));
+    }
+
+    @Test
+    public void viewTellsReadersTheBookIsStale(){
+        var underTest = new Level2ViewSequenced(new Level2ViewScalable(), Level2ViewScalable::clear);
+        var view = underTest.getView();
+        underTest.onNewOrder(1, BID, BigDecimal.ONE, 1000, 10);
+        assertFalse(view.isStale());
+        assertEquals(1, view.getLastSequence());
+
+        underTest.onCancelOrder(3, 10);
+        assertTrue(view.isStale());
+        assertEquals(1000, view.getSizeForPriceLevel(BID, BigDecimal.ONE));
+
+        underTest.onNewOrder(2, BID, BigDecimal.ONE, 500, 11);
+        assertFalse(view.isStale());
+        assertEquals(3, view.getLastSequence());
+        assertEquals(500, view.getSizeForPriceLevel(BID, BigDecimal.ONE));
+    }
+
+    @Test
+    public void observersStayAttachedOnResynchronise(){
+        var venue = new Level2ViewScalable();
+        var other = new Level2ViewScalable();
+        var consolidated = new Level2ViewConsolidated(venue, other);
+        var stats = venue.enableStats(() -> 0);
+        var underTest = new Level2ViewSequenced(venue, Level2ViewScalable::clear);
+        other.onNewOrder(BID, BigDecimal.ONE, 100, 1);
+        underTest.onNewOrder(1, BID, BigDecimal.ONE, 1000, 10);
+        underTest.onNewOrder(2, ASK, BigDecimal.TEN, 500, 11);
+        assertEquals(1100, consolidated.getSizeForPriceLevel(BID, BigDecimal.ONE));
+
+        underTest.onNewOrder(4, BID, BigDecimal.ONE, 300, 13);
+        underTest.resynchronise(3, book -> {
+            book.onNewOrder(BID, BigDecimal.ONE, 1000, 10);
+            book.onNewOrder(BID, new BigDecimal("0.5"), 200, 12);
+        });
+        assertFalse(underTest.isStale());
+        //The old levels were removed before the snapshot was loaded, nothing counted twice
+        assertEquals(1400, consolidated.getSizeForPriceLevel(BID, BigDecimal.ONE));
+        assertEquals(200, consolidated.getSizeForPriceLevel(BID, new BigDecimal("0.5")));
+        assertEquals(0, consolidated.getBookDepth(ASK));
+        assertNull(stats.getBestAsk());
+        assertEquals(1300, stats.getTopSize(BID));
+        assertEquals(0, venue.checkConsistency().size());
+    }
+}
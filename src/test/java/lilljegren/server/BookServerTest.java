@@ -0,0 +1,212 @@
+package lilljegren.server;
+
+import lilljegren.scalable.Level2ViewScalable;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static lilljegren.Level2View.Side.ASK;
+import static lilljegren.Level2View.Side.BID;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookServerTest {
+
+    @Test
+    public void queries() throws IOException {
+        try (var server = new BookServer(new Level2ViewScalable())) {
+            var address = server.start(0);
+            try (var client = new BookClient(address)) {
+                assertNull(client.getTopOfBook(BID));
+                assertEquals(0, client.getBookDepth(ASK));
+
+                server.update(book -> {
+                    book.onNewOrder(BID, new BigDecimal("1.00"), 1000, 1);
+                    book.onNewOrder(BID, new BigDecimal("1.05"), 2000, 2);
+                    book.onNewOrder(BID, new BigDecimal("0.95"), 500, 3);
+                    book.onNewOrder(ASK, new BigDecimal("2.00"), 3000, 4);
+                });
+                assertEquals(new BigDecimal("1.05"), client.getTopOfBook(BID));
+                assertEquals(new BigDecimal("2.00"), client.getTopOfBook(ASK));
+                assertEquals(3, client.getBookDepth(BID));
+                assertEquals(1000, client.getSizeForPriceLevel(BID, BigDecimal.ONE));
+
+                var prices = new BigDecimal[10];
+                var sizes = new long[10];
+                assertEquals(2, client.getLevels(BID, 2, prices, sizes));
+                assertEquals(new BigDecimal("1.05"), prices[0]);
+                assertEquals(2000, sizes[0]);
+                assertEquals(new BigDecimal("1.00"), prices[1]);
+                assertEquals(1000, sizes[1]);
+                assertEquals(3, client.getLevels(BID, 10, prices, sizes));
+
+                assertThrows(UnsupportedOperationException.class, () -> client.onCancelOrder(1));
+            }
+        }
+    }
+
+    @Test
+    public void manyClients() throws Exception {
+        try (var server = new BookServer(new Level2ViewScalable())) {
+            var address = server.start(0);
+            server.update(book -> book.onNewOrder(ASK, BigDecimal.TEN, 100, 1));
+            var clients = new ArrayList<BookClient>();
+            for (int i = 0; i < 20; i++) {
+                clients.add(new BookClient(address));
+            }
+            for (var client : clients) {
+                assertEquals(100, client.getSizeForPriceLevel(ASK, BigDecimal.TEN));
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void closeLeavesSharedExecutorRunning() throws Exception {
+        var executor = Executors.newCachedThreadPool();
+        try {
+            var server = new BookServer(new Level2ViewScalable(), executor);
+            var address = server.start(0);
+            var client = new BookClient(address);
+            assertEquals(0, client.getBookDepth(BID));
+            var subscriber = new BookSubscriber(address, (side, price, delta, newSize) -> {});
+            var thread = new Thread(subscriber);
+            thread.start();
+
+            server.close();
+            assertFalse(executor.isShutdown());
+            //The tasks of the server end anyway
+            thread.join(10_000);
+            assertFalse(subscriber.isOpen());
+            assertThrows(UncheckedIOException.class, () -> client.getBookDepth(BID));
+            client.close();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void subscription() throws Exception {
+        try (var server = new BookServer(new Level2ViewScalable())) {
+            var address = server.start(0);
+            server.update(book -> book.onNewOrder(BID, BigDecimal.ONE, 1000, 1));
+
+            List<String> received = new ArrayList<>();
+            var done = new CountDownLatch(4);
+            var subscriber = new BookSubscriber(address, (side, price, delta, newSize) -> {
+                synchronized (received) {
+                    received.add(side + ":" + price + ":" + delta + ":" + newSize);
+                }
+                done.countDown();
+            });
+            var thread = new Thread(subscriber);
+            thread.start();
+
+            //Wait for the snapshot so the subscription is registered before the updates
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (done.getCount() == 4 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            server.update(book -> {
+                book.onNewOrder(BID, BigDecimal.ONE, 500, 2);
+                book.onTrade(1000, 1);
+                book.onNewOrder(ASK, BigDecimal.TEN, 100, 3);
+            });
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            subscriber.close();
+            thread.join(10_000);
+            assertFalse(subscriber.isOpen());
+
+            assertEquals(List.of("BID:1:1000:1000", "BID:1:500:1500", "BID:1:-1000:500", "ASK:10:100:100"), received);
+        }
+    }
+
+    @Test
+    public void pricesBeyondLong() throws Exception {
+        var big = new BigDecimal("12345678901234567890.5");
+        var book = new Level2ViewScalable();
+        try (var server = new BookServer(book)) {
+            var address = server.start(0);
+            server.update(b -> b.onNewOrder(BID, big, 100, 1));
+
+            List<String> received = new ArrayList<>();
+            var done = new CountDownLatch(3);
+            var subscriber = new BookSubscriber(address, (side, price, delta, newSize) -> {
+                synchronized (received) {
+                    received.add(side + ":" + price + ":" + delta + ":" + newSize);
+                }
+                done.countDown();
+            });
+            var thread = new Thread(subscriber);
+            thread.start();
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (done.getCount() == 3 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            server.update(b -> {
+                b.onNewOrder(BID, new BigDecimal("1E-300"), 100, 2);
+                b.onReplaceOrder(BigDecimal.TEN, 100, 2);
+            });
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(0, book.checkConsistency().size());
+
+            try (var client = new BookClient(address)) {
+                assertEquals(big, client.getTopOfBook(BID));
+                assertEquals(100, client.getSizeForPriceLevel(BID, big));
+                assertThrows(IllegalArgumentException.class, () -> client.getSizeForPriceLevel(BID, BigDecimal.TEN.pow(200)));
+            }
+
+            //A price too long for the protocol drops the subscriber but not the book
+            server.update(b -> b.onNewOrder(ASK, BigDecimal.TEN.pow(200), 100, 3));
+            thread.join(10_000);
+            assertFalse(subscriber.isOpen());
+            assertEquals(0, book.checkConsistency().size());
+            assertEquals(1, book.getBookDepth(ASK));
+            assertEquals(List.of("BID:" + big + ":100:100", "BID:1E-300:100:100", "BID:1E-300:-100:0"), received.subList(0, 3));
+        }
+    }
+
+    @Test
+    public void subscriptionToLargeBook() throws Exception {
+        try (var server = new BookServer(new Level2ViewScalable())) {
+            var address = server.start(0);
+            //More levels than fit in the buffer of the changes
+            var levels = 3000;
+            server.update(book -> {
+                for (int i = 1; i <= levels; i++) {
+                    book.onNewOrder(BID, BigDecimal.valueOf(i), 100, i);
+                }
+            });
+
+            var received = new AtomicLong();
+            var done = new CountDownLatch(levels + 1);
+            var subscriber = new BookSubscriber(address, (side, price, delta, newSize) -> {
+                received.addAndGet(delta);
+                done.countDown();
+            });
+            var thread = new Thread(subscriber);
+            thread.start();
+
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (done.getCount() > 1 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(1, done.getCount());
+            server.update(book -> book.onNewOrder(ASK, BigDecimal.TEN, 100, levels + 1));
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertTrue(subscriber.isOpen());
+            assertEquals(100L * (levels + 1), received.get());
+            subscriber.close();
+            thread.join(10_000);
+        }
+    }
+}